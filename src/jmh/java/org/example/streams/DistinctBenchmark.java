@@ -0,0 +1,115 @@
+package org.example.streams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the list based distinct that {@link Stream#distinct()} used to run with the hash based one, on small
+ * integers with repeats like the StreamTest data, and runs the hash based one on 10M strings sequentially, in
+ * parallel and right after a sort.
+ * <p>
+ * Example:
+ * <pre>
+ * mvn -Pbenchmarks -DskipTests package
+ * java -jar target/benchmarks.jar DistinctBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DistinctBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Integers {
+
+        @Param({"1000", "10000", "50000"})
+        private int size;
+
+        private List<Integer> numbers;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // every value appears about twice, like 1, 2, 3, 4, 5, 2, 3
+            numbers = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                numbers.add(i % (size / 2 + 1));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Strings {
+
+        @Param({"10000000"})
+        private int size;
+
+        @Param({"1000000"})
+        private int distinct;
+
+        private List<String> strings;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String[] pool = new String[distinct];
+            for (int i = 0; i < distinct; i++) {
+                pool[i] = "item-" + i;
+            }
+            Random random = new Random(42);
+            strings = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                strings.add(pool[random.nextInt(distinct)]);
+            }
+        }
+    }
+
+    /**
+     * The distinct implementation used before the hash based one, kept for comparison
+     */
+    @Benchmark
+    public List<Integer> listContainsDistinct(Integers input) {
+        List<Integer> distinct = new ArrayList<>();
+        for (Integer item : input.numbers) {
+            if (!distinct.contains(item)) {
+                distinct.add(item);
+            }
+        }
+        return distinct;
+    }
+
+    @Benchmark
+    public long hashDistinct(Integers input) {
+        return new Stream<>(input.numbers).distinct().count();
+    }
+
+    @Benchmark
+    public long sequentialDistinct(Strings input) {
+        return new Stream<>(input.strings).distinct().count();
+    }
+
+    @Benchmark
+    public long parallelDistinct(Strings input) {
+        return new Stream<>(input.strings).parallel().distinct().count();
+    }
+
+    @Benchmark
+    public long sortedDistinct(Strings input) {
+        return new Stream<>(input.strings).sorted().distinct().count();
+    }
+}
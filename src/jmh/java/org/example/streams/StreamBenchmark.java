@@ -0,0 +1,130 @@
+package org.example.streams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the common operations of {@link Stream} next to the same pipeline on {@code java.util.stream}, sequentially
+ * and in parallel, over 1K to 10M integers.
+ * <p>
+ * Every operation has a {@code stream*} and a {@code jdk*} variant returning the same result, so a report lists
+ * them side by side. The input holds random values with about one repeat per value, which gives distinct and toMap
+ * real work to do. Run through {@link BenchmarkRunner}, which adds the GC profiler to report allocations.
+ * <p>
+ * Example:
+ * <pre>
+ * mvn -Pbenchmarks -DskipTests package
+ * java -jar target/benchmarks.jar StreamBenchmark.*Sorted -p size=1000000 -p mode=parallel
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StreamBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    @Param({"sequential", "parallel"})
+    private String mode;
+
+    private List<Integer> numbers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        numbers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            numbers.add(random.nextInt(Math.max(1, size / 2)));
+        }
+    }
+
+    @Benchmark
+    public List<Integer> streamFilterMap() {
+        return stream().filter(n -> n % 3 == 0).map(n -> n * 2).toList();
+    }
+
+    @Benchmark
+    public List<Integer> jdkFilterMap() {
+        return jdk().filter(n -> n % 3 == 0).map(n -> n * 2).toList();
+    }
+
+    @Benchmark
+    public long streamDistinct() {
+        return stream().distinct().count();
+    }
+
+    @Benchmark
+    public long jdkDistinct() {
+        return jdk().distinct().count();
+    }
+
+    @Benchmark
+    public List<Integer> streamSorted() {
+        return stream().sorted().toList();
+    }
+
+    @Benchmark
+    public List<Integer> jdkSorted() {
+        return jdk().sorted().toList();
+    }
+
+    @Benchmark
+    public long streamFlatMap() {
+        return stream().flatMap(n -> new Stream<>(Arrays.asList(n, n + 1, n + 2, n + 3))).count();
+    }
+
+    @Benchmark
+    public long jdkFlatMap() {
+        return jdk().flatMap(n -> java.util.stream.Stream.of(n, n + 1, n + 2, n + 3)).count();
+    }
+
+    @Benchmark
+    public Integer streamReduce() {
+        return stream().reduce(Integer::sum, 0);
+    }
+
+    @Benchmark
+    public Integer jdkReduce() {
+        return jdk().reduce(0, Integer::sum);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> streamToMap() {
+        return stream().toMap(n -> n, n -> 1, Integer::sum);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> jdkToMap() {
+        return jdk().collect(java.util.stream.Collectors.toMap(n -> n, n -> 1, Integer::sum));
+    }
+
+    private Stream<Integer> stream() {
+        Stream<Integer> stream = new Stream<>(numbers);
+        return "parallel".equals(mode) ? stream.parallel() : stream;
+    }
+
+    private java.util.stream.Stream<Integer> jdk() {
+        return "parallel".equals(mode) ? numbers.parallelStream() : numbers.stream();
+    }
+}
@@ -1,38 +1,112 @@
 package org.example.rate.limiter;
 
-import lombok.SneakyThrows;
-
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
+/**
+ * Token bucket refilled lazily from the monotonic clock on every acquire, without a refill thread or a lock.
+ * <p>
+ * The whole state is one long: the clock reading at which the bucket would have been empty. The tokens available at
+ * {@code now} are {@code min(bucketSize, (now - emptyAt) / nanosPerToken)}, so the token count and the time of the
+ * last refill change together in a single CAS. Rates may be fractional, e.g. 0.5 per second.
+ */
 public class TokenBucketRateLimiter implements IRateLimiter {
 
-    private final int rate;
-    private final TimeUnit timeUnit;
+    /** Longest span of nanoseconds the bucket works with, far from overflowing when added to a timestamp */
+    private static final long MAX_NANOS = Long.MAX_VALUE / 4;
+
     private final int bucketSize;
+    /** Nanoseconds it takes to refill one token */
+    private final double nanosPerToken;
+    /** Nanoseconds it takes to refill the whole bucket */
+    private final long fillNanos;
+    private final LongSupplier clock;
+    /** Clock reading at which the bucket was empty, if no token had been taken since */
+    private final AtomicLong emptyAt;
 
-    private final AtomicInteger currentTokens;
-    private final Thread deamonThread;
+    /**
+     * Creates a full bucket
+     * @param rate Tokens added per time unit, may be fractional
+     * @param timeUnit Time unit of the rate
+     * @param bucketSize Most tokens the bucket holds, the largest burst allowed
+     */
+    public TokenBucketRateLimiter(double rate, TimeUnit timeUnit, int bucketSize) {
+        this(rate, timeUnit, bucketSize, System::nanoTime);
+    }
 
-    public TokenBucketRateLimiter(int rate, TimeUnit timeUnit, int bucketSize) {
-        this.rate = rate;
-        this.timeUnit = timeUnit;
+    /**
+     * Creates a full bucket refilled from the given clock
+     * @param clock Monotonic clock in nanoseconds
+     */
+    TokenBucketRateLimiter(double rate, TimeUnit timeUnit, int bucketSize, LongSupplier clock) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        if (timeUnit == null) {
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+        }
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("BucketSize must be positive");
+        }
         this.bucketSize = bucketSize;
-        this.currentTokens = new AtomicInteger(0);
-        this.deamonThread = new Thread(this::addTokens);
-        deamonThread.setDaemon(true);
-        deamonThread.start();
+        this.nanosPerToken = timeUnit.toNanos(1) / rate;
+        this.fillNanos = nanos(bucketSize);
+        this.clock = clock;
+        this.emptyAt = new AtomicLong(clock.getAsLong() - fillNanos);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
     }
 
-    public synchronized boolean tryAcquire() {
-        System.out.print("current: " + currentTokens.get() + " message: ");
-        if (currentTokens.get() > 0) {
-            currentTokens.decrementAndGet();
-            return true;
-        } else {
+    /**
+     * Takes the permits if the bucket holds enough tokens, never waits
+     * @param permits Tokens to take
+     * @return true if the tokens were taken
+     */
+    public boolean tryAcquire(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (permits > bucketSize) {
             return false;
         }
+        // rounded down like fillNanos, so a full bucket always covers bucketSize permits, taken at once or one by one
+        long cost = nanos(permits);
+        while (true) {
+            long current = emptyAt.get();
+            long now = clock.getAsLong();
+            // time worth of tokens in the bucket, capped at a full bucket; differences only, so nothing overflows
+            long elapsed = now - current;
+            long credit = elapsed - fillNanos > 0 ? fillNanos : elapsed;
+            if (credit < cost) {
+                return false;
+            }
+            if (emptyAt.compareAndSet(current, now - (credit - cost))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens the bucket holds right now, including the fraction of the next one
+     */
+    public double availableTokens() {
+        long elapsed = clock.getAsLong() - emptyAt.get();
+        if (elapsed - fillNanos >= 0) {
+            return bucketSize;
+        }
+        return Math.max(0, elapsed) / nanosPerToken;
+    }
+
+    /**
+     * Returns the nanoseconds it takes to refill the tokens, rounded down and capped so that very small rates cannot
+     * overflow
+     */
+    private long nanos(int tokens) {
+        return (long) Math.floor(Math.min(nanosPerToken * tokens, MAX_NANOS));
     }
 
     @Override
@@ -43,12 +117,4 @@ public class TokenBucketRateLimiter implements IRateLimiter {
             System.out.println("ignored");
         }
     }
-
-    @SneakyThrows
-    private void addTokens() {
-        while (true) {
-            currentTokens.updateAndGet(currentToken -> Math.min(bucketSize, currentToken + rate));
-            timeUnit.sleep(1);
-        }
-    }
 }
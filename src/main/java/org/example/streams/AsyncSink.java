@@ -0,0 +1,65 @@
+package org.example.streams;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Per-element fallback for parallel stages that do not read directly from a splittable source:
+ * every element is submitted as its own task and the outputs are pushed downstream through a
+ * {@link ReorderBuffer}, in encounter order or in the order the tasks complete.
+ * <p>
+ * At most a window of tasks is in flight at a time, further elements wait for the oldest tasks to be handed on.
+ * Once the downstream sink requests cancellation no further tasks are submitted and the
+ * outstanding ones are cancelled.
+ *
+ * @param <IN> The type of elements accepted by the sink
+ * @param <OUT> The type of elements pushed to the downstream sink
+ */
+public class AsyncSink<IN, OUT> extends ChainedSink<IN, OUT> {
+
+    private final Function<IN, List<OUT>> function;
+    private final ExecutorService executorService;
+    private final ReorderBuffer<OUT> pending;
+    private final int maxInFlight;
+
+    /**
+     * @param function Runs the stages for an element, returning the outputs of that element
+     * @param executorService Executor the tasks are submitted to
+     * @param inCompletionOrder True to push outputs downstream in the order the tasks complete
+     * @param maxInFlight Tasks that may be in flight at the same time
+     * @param downstream The sink receiving the outputs
+     */
+    public AsyncSink(Function<IN, List<OUT>> function, ExecutorService executorService, boolean inCompletionOrder,
+                     int maxInFlight, Sink<OUT> downstream) {
+        super(downstream);
+        this.function = function;
+        this.executorService = executorService;
+        this.pending = new ReorderBuffer<>(inCompletionOrder);
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void accept(IN item) {
+        if (downstream.cancellationRequested()) {
+            return;
+        }
+        drain(maxInFlight - 1);
+        if (!downstream.cancellationRequested()) {
+            pending.submit(executorService, () -> function.apply(item));
+        }
+    }
+
+    @Override
+    public void end() {
+        drain(0);
+        super.end();
+    }
+
+    private void drain(int maxInFlight) {
+        pending.drain(downstream, maxInFlight);
+        if (downstream.cancellationRequested()) {
+            pending.cancel();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.streams;
+
+/**
+ * Base class for sinks that forward their output to a downstream sink
+ *
+ * @param <IN> The type of elements accepted by this sink
+ * @param <OUT> The type of elements pushed to the downstream sink
+ */
+public abstract class ChainedSink<IN, OUT> implements Sink<IN> {
+
+    /** The sink receiving the output of this stage */
+    protected final Sink<OUT> downstream;
+
+    protected ChainedSink(Sink<OUT> downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void begin(long size) {
+        downstream.begin(-1);
+    }
+
+    @Override
+    public void end() {
+        downstream.end();
+    }
+
+    @Override
+    public boolean cancellationRequested() {
+        return downstream.cancellationRequested();
+    }
+
+    /**
+     * Base class for int stages that forward to a int downstream sink
+     */
+    public abstract static class OfInt implements Sink.OfInt {
+
+        protected final Sink.OfInt downstream;
+
+        protected OfInt(Sink.OfInt downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void begin(long size) {
+            downstream.begin(-1);
+        }
+
+        @Override
+        public void end() {
+            downstream.end();
+        }
+
+        @Override
+        public boolean cancellationRequested() {
+            return downstream.cancellationRequested();
+        }
+    }
+
+    /**
+     * Base class for long stages that forward to a long downstream sink
+     */
+    public abstract static class OfLong implements Sink.OfLong {
+
+        protected final Sink.OfLong downstream;
+
+        protected OfLong(Sink.OfLong downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void begin(long size) {
+            downstream.begin(-1);
+        }
+
+        @Override
+        public void end() {
+            downstream.end();
+        }
+
+        @Override
+        public boolean cancellationRequested() {
+            return downstream.cancellationRequested();
+        }
+    }
+
+    /**
+     * Base class for double stages that forward to a double downstream sink
+     */
+    public abstract static class OfDouble implements Sink.OfDouble {
+
+        protected final Sink.OfDouble downstream;
+
+        protected OfDouble(Sink.OfDouble downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void begin(long size) {
+            downstream.begin(-1);
+        }
+
+        @Override
+        public void end() {
+            downstream.end();
+        }
+
+        @Override
+        public boolean cancellationRequested() {
+            return downstream.cancellationRequested();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.streams;
+
+import java.util.Collection;
+
+/**
+ * Terminal sink that adds every element to the given collection
+ *
+ * @param <T> The type of elements in the stream
+ * @param <C> The type of the target collection
+ */
+public class CollectionSink<T, C extends Collection<T>> implements TerminalSink<T, C> {
+
+    private final C target;
+
+    public CollectionSink(C target) {
+        this.target = target;
+    }
+
+    @Override
+    public void accept(T item) {
+        target.add(item);
+    }
+
+    @Override
+    public C result() {
+        return target;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.streams;
+
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A mutable reduction of stream elements into a container, used by {@link Stream#collect(Collector)}.
+ * <p>
+ * Sequential streams accumulate every element into one container. Parallel streams accumulate each chunk into
+ * a container of its own and combine the containers once all chunks are done, or accumulate every chunk into one
+ * shared container when the collector is {@link Characteristics#CONCURRENT}.
+ * <p>
+ * Example:
+ * <pre>
+ * Collector<String, List<String>, List<String>> toList = Collector.of(ArrayList::new, List::add,
+ *     (left, right) -> { left.addAll(right); return left; });
+ * List<String> list = new Stream<>(Arrays.asList("a", "b")).collect(toList); // Returns ["a", "b"]
+ * </pre>
+ *
+ * @param supplier Creates a new empty container
+ * @param accumulator Adds an element to a container
+ * @param combiner Merges the second container into the first, returning the merged container
+ * @param finisher Turns the container into the result
+ * @param characteristics Properties the stream may take advantage of
+ * @param <T> The type of elements collected
+ * @param <A> The type of the container
+ * @param <R> The type of the result
+ */
+public record Collector<T, A, R>(Supplier<A> supplier, BiConsumer<A, T> accumulator, BinaryOperator<A> combiner,
+                                 Function<A, R> finisher, Set<Characteristics> characteristics) {
+
+    public enum Characteristics {
+        /** The container is thread-safe, so all chunks of a parallel stream accumulate into one shared container */
+        CONCURRENT,
+        /** The result does not depend on the encounter order of the elements */
+        UNORDERED
+    }
+
+    public Collector {
+        if (supplier == null || accumulator == null || combiner == null || finisher == null) {
+            throw new IllegalArgumentException("Supplier, Accumulator, Combiner and Finisher cannot be null");
+        }
+        characteristics = characteristics == null ? Set.of() : Set.copyOf(characteristics);
+    }
+
+    /**
+     * Creates a collector
+     * @param supplier Creates a new empty container
+     * @param accumulator Adds an element to a container
+     * @param combiner Merges the second container into the first, returning the merged container
+     * @param finisher Turns the container into the result
+     * @param characteristics Properties the stream may take advantage of
+     * @return Collector
+     */
+    public static <T, A, R> Collector<T, A, R> of(Supplier<A> supplier, BiConsumer<A, T> accumulator, BinaryOperator<A> combiner,
+                                                  Function<A, R> finisher, Characteristics... characteristics) {
+        return new Collector<>(supplier, accumulator, combiner, finisher, Set.of(characteristics));
+    }
+
+    /**
+     * Creates a collector whose result is the container itself
+     * @param supplier Creates a new empty container
+     * @param accumulator Adds an element to a container
+     * @param combiner Merges the second container into the first, returning the merged container
+     * @param characteristics Properties the stream may take advantage of
+     * @return Collector
+     */
+    public static <T, A> Collector<T, A, A> of(Supplier<A> supplier, BiConsumer<A, T> accumulator, BinaryOperator<A> combiner,
+                                               Characteristics... characteristics) {
+        return new Collector<>(supplier, accumulator, combiner, Function.identity(), Set.of(characteristics));
+    }
+
+    public boolean isConcurrent() {
+        return characteristics.contains(Characteristics.CONCURRENT);
+    }
+
+    public boolean isUnordered() {
+        return characteristics.contains(Characteristics.UNORDERED);
+    }
+}
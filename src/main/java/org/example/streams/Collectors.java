@@ -0,0 +1,490 @@
+package org.example.streams;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Built-in {@link Collector}s, including grouping and partitioning with downstream collectors.
+ * <p>
+ * Example:
+ * <pre>
+ * Map<Integer, Long> countByLength = new Stream<>(Arrays.asList("a", "bb", "cc"))
+ *     .collect(Collectors.groupingBy(String::length, Collectors.counting())); // Returns {1=1, 2=2}
+ * </pre>
+ */
+public final class Collectors {
+
+    private Collectors() {
+    }
+
+    /**
+     * Collects the elements into an {@link ArrayList} in encounter order
+     */
+    public static <T> Collector<T, ?, List<T>> toList() {
+        return toCollection(ArrayList::new);
+    }
+
+    /**
+     * Collects the elements into a {@link HashSet}
+     */
+    public static <T> Collector<T, ?, Set<T>> toSet() {
+        return Collector.of(HashSet::new, Set::add, (left, right) -> {
+            left.addAll(right);
+            return left;
+        }, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Collects the elements into new collections created by the factory
+     * @param collectionFactory Creates an empty collection
+     * @return Collector into a collection
+     */
+    public static <T, C extends Collection<T>> Collector<T, C, C> toCollection(Supplier<C> collectionFactory) {
+        if (collectionFactory == null) {
+            throw new IllegalArgumentException("CollectionFactory cannot be null");
+        }
+        return Collector.of(collectionFactory, Collection::add, (left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+    }
+
+    /**
+     * Collects the elements into a {@link HashMap}, failing on duplicate keys
+     * @param keyMapper Function to extract the key
+     * @param valueMapper Function to extract the value
+     * @return Collector into a map
+     */
+    public static <T, K, V> Collector<T, ?, Map<K, V>> toMap(Function<T, K> keyMapper, Function<T, V> valueMapper) {
+        return toMap(keyMapper, valueMapper, (a, b) -> {
+            throw new IllegalStateException("Duplicate key found with values " + a + " and " + b);
+        });
+    }
+
+    /**
+     * Collects the elements into a {@link HashMap}, merging the values of duplicate keys
+     * @param keyMapper Function to extract the key
+     * @param valueMapper Function to extract the value
+     * @param mergeFunction Combines the value already in the map with the value of a duplicate key
+     * @return Collector into a map
+     */
+    public static <T, K, V> Collector<T, ?, Map<K, V>> toMap(Function<T, K> keyMapper, Function<T, V> valueMapper,
+                                                             BinaryOperator<V> mergeFunction) {
+        return toMap(keyMapper, valueMapper, mergeFunction, HashMap::new);
+    }
+
+    /**
+     * Collects the elements into maps created by the factory, merging the values of duplicate keys
+     * @param keyMapper Function to extract the key
+     * @param valueMapper Function to extract the value
+     * @param mergeFunction Combines the value already in the map with the value of a duplicate key
+     * @param mapFactory Creates an empty map
+     * @return Collector into a map
+     */
+    public static <T, K, V, M extends Map<K, V>> Collector<T, M, M> toMap(Function<T, K> keyMapper, Function<T, V> valueMapper,
+                                                                         BinaryOperator<V> mergeFunction, Supplier<M> mapFactory) {
+        if (keyMapper == null || valueMapper == null || mergeFunction == null || mapFactory == null) {
+            throw new IllegalArgumentException("KeyMapper, ValueMapper, MergeFunction and MapFactory cannot be null");
+        }
+        return Collector.of(mapFactory,
+                (map, item) -> merge(map, keyMapper.apply(item), valueMapper.apply(item), mergeFunction),
+                (left, right) -> {
+                    right.forEach((key, value) -> merge(left, key, value, mergeFunction));
+                    return left;
+                });
+    }
+
+    /**
+     * Groups the elements by key into lists in a {@link HashMap}
+     * @param classifier Function to extract the key
+     * @return Collector into a grouped map
+     */
+    public static <T, K> Collector<T, ?, Map<K, List<T>>> groupingBy(Function<T, K> classifier) {
+        return groupingBy(classifier, toList());
+    }
+
+    /**
+     * Groups the elements by key in a {@link HashMap}, collecting each group with the downstream collector
+     * <p>
+     * Example:
+     * <pre>
+     * Map<Integer, Set<String>> byLength = new Stream<>(Arrays.asList("a", "bb", "bb"))
+     *     .collect(Collectors.groupingBy(String::length, Collectors.toSet())); // Returns {1=["a"], 2=["bb"]}
+     * </pre>
+     *
+     * @param classifier Function to extract the key
+     * @param downstream Collector for the elements of one group
+     * @return Collector into a grouped map
+     */
+    public static <T, K, A, D> Collector<T, ?, Map<K, D>> groupingBy(Function<T, K> classifier, Collector<T, A, D> downstream) {
+        return groupingBy(classifier, HashMap::new, downstream);
+    }
+
+    /**
+     * Groups the elements by key in maps created by the factory, collecting each group with the downstream collector
+     * @param classifier Function to extract the key
+     * @param mapFactory Creates an empty map
+     * @param downstream Collector for the elements of one group
+     * @return Collector into a grouped map
+     */
+    public static <T, K, A, D, M extends Map<K, D>> Collector<T, ?, M> groupingBy(Function<T, K> classifier, Supplier<M> mapFactory,
+                                                                                  Collector<T, A, D> downstream) {
+        if (classifier == null || mapFactory == null || downstream == null) {
+            throw new IllegalArgumentException("Classifier, MapFactory and Downstream cannot be null");
+        }
+        Supplier<A> groupSupplier = downstream.supplier();
+        BiConsumer<A, T> groupAccumulator = downstream.accumulator();
+        BinaryOperator<A> groupCombiner = downstream.combiner();
+        @SuppressWarnings("unchecked")
+        Supplier<Map<K, A>> containerFactory = (Supplier<Map<K, A>>) mapFactory;
+        return Collector.of(containerFactory,
+                (map, item) -> groupAccumulator.accept(map.computeIfAbsent(classifier.apply(item), key -> groupSupplier.get()), item),
+                (left, right) -> {
+                    right.forEach((key, group) -> left.merge(key, group, groupCombiner));
+                    return left;
+                },
+                map -> finishGroups(map, downstream.finisher()),
+                unordered(downstream));
+    }
+
+    /**
+     * Groups the elements by key into lists in a {@link ConcurrentHashMap}, see {@link #groupingByConcurrent(Function, Collector)}
+     * @param classifier Function to extract the key
+     * @return Concurrent collector into a grouped map
+     */
+    public static <T, K> Collector<T, ?, ConcurrentMap<K, List<T>>> groupingByConcurrent(Function<T, K> classifier) {
+        return groupingByConcurrent(classifier, toList());
+    }
+
+    /**
+     * Groups the elements by key in a {@link ConcurrentHashMap} that all chunks of a parallel stream share,
+     * so no per-chunk maps have to be merged. The order of the elements within a group is not defined.
+     * <p>
+     * Example:
+     * <pre>
+     * ConcurrentMap<Boolean, Long> evenOdd = StreamsUtils.intStream(1000).parallel()
+     *     .collect(Collectors.groupingByConcurrent(n -> n % 2 == 0, Collectors.counting())); // Returns {false=500, true=500}
+     * </pre>
+     *
+     * @param classifier Function to extract the key
+     * @param downstream Collector for the elements of one group, its containers are updated under their own lock
+     * @return Concurrent collector into a grouped map
+     */
+    public static <T, K, A, D> Collector<T, ?, ConcurrentMap<K, D>> groupingByConcurrent(Function<T, K> classifier,
+                                                                                       Collector<T, A, D> downstream) {
+        if (classifier == null || downstream == null) {
+            throw new IllegalArgumentException("Classifier and Downstream cannot be null");
+        }
+        Supplier<A> groupSupplier = downstream.supplier();
+        BiConsumer<A, T> groupAccumulator = downstream.accumulator();
+        BinaryOperator<A> groupCombiner = downstream.combiner();
+        return Collector.of(ConcurrentHashMap<K, A>::new,
+                (map, item) -> {
+                    A group = map.computeIfAbsent(classifier.apply(item), key -> groupSupplier.get());
+                    synchronized (group) {
+                        groupAccumulator.accept(group, item);
+                    }
+                },
+                (left, right) -> {
+                    right.forEach((key, group) -> left.merge(key, group, groupCombiner));
+                    return left;
+                },
+                map -> finishGroups(map, downstream.finisher()),
+                Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Splits the elements into the ones matching the predicate and the rest, collected into lists
+     * @param predicate Condition to test elements against
+     * @return Collector into a map with the keys true and false
+     */
+    public static <T> Collector<T, ?, Map<Boolean, List<T>>> partitioningBy(Predicate<T> predicate) {
+        return partitioningBy(predicate, toList());
+    }
+
+    /**
+     * Splits the elements into the ones matching the predicate and the rest, collecting each part with the downstream collector
+     * <p>
+     * Example:
+     * <pre>
+     * Map<Boolean, Long> evenOdd = new Stream<>(Arrays.asList(1, 2, 3))
+     *     .collect(Collectors.partitioningBy(n -> n % 2 == 0, Collectors.counting())); // Returns {false=2, true=1}
+     * </pre>
+     *
+     * @param predicate Condition to test elements against
+     * @param downstream Collector for the elements of one part
+     * @return Collector into a map with the keys true and false
+     */
+    public static <T, A, D> Collector<T, ?, Map<Boolean, D>> partitioningBy(Predicate<T> predicate, Collector<T, A, D> downstream) {
+        if (predicate == null || downstream == null) {
+            throw new IllegalArgumentException("Predicate and Downstream cannot be null");
+        }
+        BiConsumer<A, T> partAccumulator = downstream.accumulator();
+        BinaryOperator<A> partCombiner = downstream.combiner();
+        Function<A, D> partFinisher = downstream.finisher();
+        return Collector.of(() -> new Partition<>(downstream.supplier().get(), downstream.supplier().get()),
+                (partition, item) -> partAccumulator.accept(predicate.test(item) ? partition.matching() : partition.rest(), item),
+                (left, right) -> new Partition<>(partCombiner.apply(left.matching(), right.matching()),
+                        partCombiner.apply(left.rest(), right.rest())),
+                partition -> {
+                    Map<Boolean, D> result = new HashMap<>(4);
+                    result.put(false, partFinisher.apply(partition.rest()));
+                    result.put(true, partFinisher.apply(partition.matching()));
+                    return result;
+                },
+                unordered(downstream));
+    }
+
+    /**
+     * Counts the elements
+     */
+    public static <T> Collector<T, ?, Long> counting() {
+        return Collector.of(() -> new long[1], (count, item) -> count[0]++, (left, right) -> {
+            left[0] += right[0];
+            return left;
+        }, count -> count[0], Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Collects count, sum, min, max and average of an int property of the elements
+     * @param mapper Function to extract the property
+     * @return Collector into statistics
+     */
+    public static <T> Collector<T, ?, IntSummaryStatistics> summarizingInt(ToIntFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Collector.of(IntSummaryStatistics::new, (statistics, item) -> statistics.accept(mapper.applyAsInt(item)),
+                (left, right) -> {
+                    left.combine(right);
+                    return left;
+                }, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Collects count, sum, min, max and average of a long property of the elements
+     * @param mapper Function to extract the property
+     * @return Collector into statistics
+     */
+    public static <T> Collector<T, ?, LongSummaryStatistics> summarizingLong(ToLongFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Collector.of(LongSummaryStatistics::new, (statistics, item) -> statistics.accept(mapper.applyAsLong(item)),
+                (left, right) -> {
+                    left.combine(right);
+                    return left;
+                }, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Collects count, sum, min, max and average of a double property of the elements
+     * @param mapper Function to extract the property
+     * @return Collector into statistics
+     */
+    public static <T> Collector<T, ?, DoubleSummaryStatistics> summarizingDouble(ToDoubleFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Collector.of(DoubleSummaryStatistics::new, (statistics, item) -> statistics.accept(mapper.applyAsDouble(item)),
+                (left, right) -> {
+                    left.combine(right);
+                    return left;
+                }, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Transforms the elements before handing them to the downstream collector
+     * @param mapper Function to transform elements
+     * @param downstream Collector for the transformed elements
+     * @return Collector of the original elements
+     */
+    public static <T, U, A, R> Collector<T, A, R> mapping(Function<T, U> mapper, Collector<U, A, R> downstream) {
+        if (mapper == null || downstream == null) {
+            throw new IllegalArgumentException("Mapper and Downstream cannot be null");
+        }
+        BiConsumer<A, U> accumulator = downstream.accumulator();
+        return new Collector<>(downstream.supplier(), (container, item) -> accumulator.accept(container, mapper.apply(item)),
+                downstream.combiner(), downstream.finisher(), downstream.characteristics());
+    }
+
+    /**
+     * Hands only the elements matching the predicate to the downstream collector
+     * @param predicate Condition to test elements against
+     * @param downstream Collector for the matching elements
+     * @return Collector of all elements
+     */
+    public static <T, A, R> Collector<T, A, R> filtering(Predicate<T> predicate, Collector<T, A, R> downstream) {
+        if (predicate == null || downstream == null) {
+            throw new IllegalArgumentException("Predicate and Downstream cannot be null");
+        }
+        BiConsumer<A, T> accumulator = downstream.accumulator();
+        return new Collector<>(downstream.supplier(), (container, item) -> {
+            if (predicate.test(item)) {
+                accumulator.accept(container, item);
+            }
+        }, downstream.combiner(), downstream.finisher(), downstream.characteristics());
+    }
+
+    /**
+     * Reduces the elements with an associative operator
+     * @param identity Initial value of every partial result, also the result for no elements
+     * @param operator Associative function combining two values
+     * @return Collector into the reduced value
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Collector<T, ?, T> reducing(T identity, BinaryOperator<T> operator) {
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator cannot be null");
+        }
+        return Collector.of(() -> (T[]) new Object[]{identity}, (value, item) -> value[0] = operator.apply(value[0], item),
+                (left, right) -> {
+                    left[0] = operator.apply(left[0], right[0]);
+                    return left;
+                }, value -> value[0]);
+    }
+
+    /**
+     * Reduces the elements with an associative operator
+     * @param operator Associative function combining two values
+     * @return Collector into the reduced value, or empty for no elements
+     */
+    public static <T> Collector<T, ?, Optional<T>> reducing(BinaryOperator<T> operator) {
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator cannot be null");
+        }
+        return Collector.of(Reduction<T>::new, (reduction, item) -> reduction.add(item, operator),
+                (left, right) -> {
+                    if (right.present) {
+                        left.add(right.value, operator);
+                    }
+                    return left;
+                }, reduction -> reduction.present ? Optional.ofNullable(reduction.value) : Optional.empty());
+    }
+
+    /**
+     * Reduces the elements into a value of another type
+     * @param identity Initial value of every partial result, also the result for no elements
+     * @param accumulator Function adding an element to a partial result
+     * @param combiner Associative function combining two partial results
+     * @return Collector into the reduced value
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, U> Collector<T, ?, U> reducing(U identity, BiFunction<U, T, U> accumulator, BinaryOperator<U> combiner) {
+        if (accumulator == null || combiner == null) {
+            throw new IllegalArgumentException("Accumulator and Combiner cannot be null");
+        }
+        return Collector.of(() -> (U[]) new Object[]{identity}, (value, item) -> value[0] = accumulator.apply(value[0], item),
+                (left, right) -> {
+                    left[0] = combiner.apply(left[0], right[0]);
+                    return left;
+                }, value -> value[0]);
+    }
+
+    /**
+     * Sums a double property of the elements with compensation for rounding errors, see {@link CompensatedSum}
+     * @param mapper Function to extract the property
+     * @return Collector into the running sum, which also knows the count and the average
+     */
+    public static <T> Collector<T, ?, CompensatedSum> compensatedSum(ToDoubleFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Collector.of(CompensatedSum::new, (sum, item) -> sum.add(mapper.applyAsDouble(item)),
+                CompensatedSum::combine, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Sums a double property of the elements with compensation for rounding errors
+     * @param mapper Function to extract the property
+     * @return Collector into the sum, 0.0 for no elements
+     */
+    public static <T> Collector<T, ?, Double> summingDouble(ToDoubleFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Collector.of(CompensatedSum::new, (sum, item) -> sum.add(mapper.applyAsDouble(item)),
+                CompensatedSum::combine, CompensatedSum::sum, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Averages a double property of the elements with compensation for rounding errors
+     * @param mapper Function to extract the property
+     * @return Collector into the average, 0.0 for no elements
+     */
+    public static <T> Collector<T, ?, Double> averagingDouble(ToDoubleFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Collector.of(CompensatedSum::new, (sum, item) -> sum.add(mapper.applyAsDouble(item)),
+                CompensatedSum::combine, CompensatedSum::average, Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Concatenates the string forms of the elements, separated by the delimiter
+     * @param delimiter Separator between elements
+     * @return Collector into a string
+     */
+    public static <T> Collector<T, ?, String> joining(CharSequence delimiter) {
+        if (delimiter == null) {
+            throw new IllegalArgumentException("Delimiter cannot be null");
+        }
+        return Collector.of(() -> new StringJoiner(delimiter), (joiner, item) -> joiner.add(String.valueOf(item)),
+                StringJoiner::merge, StringJoiner::toString);
+    }
+
+    private static <K, V> void merge(Map<K, V> map, K key, V value, BinaryOperator<V> mergeFunction) {
+        map.compute(key, (k, existing) -> existing == null ? value : mergeFunction.apply(existing, value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, A, D, M extends Map<K, D>> M finishGroups(Map<K, A> groups, Function<A, D> finisher) {
+        groups.replaceAll((key, group) -> (A) finisher.apply(group));
+        return (M) groups;
+    }
+
+    private static Collector.Characteristics[] unordered(Collector<?, ?, ?> downstream) {
+        return downstream.isUnordered() ? new Collector.Characteristics[]{Collector.Characteristics.UNORDERED}
+                : new Collector.Characteristics[0];
+    }
+
+    /**
+     * Container of {@link #reducing(BinaryOperator)}, which tells no element apart from a null result
+     */
+    private static final class Reduction<T> {
+        private T value;
+        private boolean present;
+
+        private void add(T item, BinaryOperator<T> operator) {
+            value = present ? operator.apply(value, item) : item;
+            present = true;
+        }
+    }
+
+    /**
+     * Containers of the two parts of {@link #partitioningBy(Predicate, Collector)}
+     */
+    private record Partition<A>(A matching, A rest) {
+    }
+}
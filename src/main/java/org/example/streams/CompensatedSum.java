@@ -0,0 +1,78 @@
+package org.example.streams;
+
+/**
+ * Running sum of doubles with Kahan-Babuska compensation, used by sum and average.
+ * <p>
+ * The low-order bits lost by every addition are collected in a separate compensation term, so the error of the sum
+ * stays bounded by the precision of one addition instead of growing with the number of values. Partial sums of the
+ * chunks of a parallel stream are combined with their compensations.
+ * <p>
+ * Example:
+ * <pre>
+ * CompensatedSum sum = new CompensatedSum();
+ * for (int i = 0; i < 10; i++) {
+ *     sum.add(0.1);
+ * }
+ * sum.sum(); // Returns 1.0, plain addition returns 0.9999999999999999
+ * </pre>
+ */
+public final class CompensatedSum {
+
+    private double sum;
+    private double compensation;
+    /** Uncompensated sum, which tells the sign of an overflow when the compensated sum turns into NaN */
+    private double simpleSum;
+    private long count;
+
+    /**
+     * Adds a value to the sum
+     * @param value Value to add
+     */
+    public void add(double value) {
+        count++;
+        simpleSum += value;
+        addCompensated(value);
+    }
+
+    /**
+     * Adds the values of another sum to this one
+     * @param other Sum to add, left unchanged
+     * @return This sum
+     */
+    public CompensatedSum combine(CompensatedSum other) {
+        count += other.count;
+        simpleSum += other.simpleSum;
+        addCompensated(other.sum);
+        addCompensated(other.compensation);
+        return this;
+    }
+
+    public double sum() {
+        double total = sum + compensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) {
+            return simpleSum;
+        }
+        return total;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values, 0.0 if no value was added
+     */
+    public double average() {
+        return count == 0 ? 0.0 : sum() / count;
+    }
+
+    private void addCompensated(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+}
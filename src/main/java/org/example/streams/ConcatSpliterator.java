@@ -0,0 +1,81 @@
+package org.example.streams;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the elements of one spliterator followed by the elements of another.
+ * <p>
+ * The first split hands out the first spliterator as a whole, so a parallel stream runs both halves as
+ * separate chunks, and further splits are left to the second spliterator.
+ *
+ * @param <T> The type of elements
+ */
+public class ConcatSpliterator<T> implements Spliterator<T>, AutoCloseable {
+
+    /** First spliterator while it has not been handed out by a split or exhausted */
+    private Spliterator<T> first;
+    private final Spliterator<T> second;
+    /** Kept to release the resources of the first spliterator after it was handed out by a split */
+    private final Spliterator<T> firstSource;
+
+    /**
+     * @param first Spliterator whose elements come first
+     * @param second Spliterator whose elements follow
+     */
+    public ConcatSpliterator(Spliterator<T> first, Spliterator<T> second) {
+        this.first = first;
+        this.second = second;
+        this.firstSource = first;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (first != null) {
+            if (first.tryAdvance(action)) {
+                return true;
+            }
+            first = null;
+        }
+        return second.tryAdvance(action);
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (first != null) {
+            Spliterator<T> prefix = first;
+            first = null;
+            return prefix;
+        }
+        return second.trySplit();
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = second.estimateSize();
+        if (first == null) {
+            return size;
+        }
+        long total = first.estimateSize() + size;
+        // both sizes are positive, so a negative total means the sum overflowed
+        return total < 0 ? Long.MAX_VALUE : total;
+    }
+
+    @Override
+    public int characteristics() {
+        if (first == null) {
+            return second.characteristics() & (ORDERED | SIZED);
+        }
+        int both = first.characteristics() & second.characteristics();
+        return (both & ORDERED) | (estimateSize() < Long.MAX_VALUE ? both & SIZED : 0);
+    }
+
+    @Override
+    public void close() {
+        try {
+            ReducePipeline.close(firstSource);
+        } finally {
+            ReducePipeline.close(second);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.streams;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors a parallel stream can run its stages on, see {@link Stream#parallel(ExecutionBackend)}.
+ * <p>
+ * Every backend holds one executor shared by all streams using it. The executors live as long as the application
+ * and are never shut down by a stream, so they must not be shut down by the caller either.
+ * <p>
+ * Example:
+ * <pre>
+ * List<String> pages = new Stream<>(urls)
+ *     .parallel(ExecutionBackend.VIRTUAL_THREADS)
+ *     .map(url -> download(url)) // blocking calls do not hold up a platform thread each
+ *     .toList();
+ * </pre>
+ */
+public enum ExecutionBackend {
+
+    /** Work-stealing pool with one worker per available processor, for CPU-bound stages */
+    FORK_JOIN(new ForkJoinPool(Runtime.getRuntime().availableProcessors()), Runtime.getRuntime().availableProcessors()),
+
+    /**
+     * One new virtual thread per task, for stages that block on I/O or sleep.
+     * Falls back to a cached pool of daemon threads on runtimes without virtual threads.
+     */
+    VIRTUAL_THREADS(virtualThreadPerTaskExecutor(), 256),
+
+    /** Runs every task on the thread that submits it, so parallel stages run sequentially on the calling thread */
+    CALLER_RUNS(new CallerRunsExecutorService(), 1);
+
+    private final ExecutorService executorService;
+
+    /** Number of tasks worth running at the same time, which decides how many chunks a source is split into */
+    private final int parallelism;
+
+    ExecutionBackend(ExecutorService executorService, int parallelism) {
+        this.executorService = executorService;
+        this.parallelism = parallelism;
+    }
+
+    public ExecutorService executorService() {
+        return executorService;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the backend owning the executor
+     * @param executorService Executor to look up
+     * @return Backend, or null for an executor provided by the user
+     */
+    static ExecutionBackend of(ExecutorService executorService) {
+        for (ExecutionBackend backend : values()) {
+            if (backend.executorService == executorService) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            // looked up at runtime, the library is compiled for a release without virtual threads
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "stream-blocking-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Executor running every task inline on the submitting thread
+     */
+    private static final class CallerRunsExecutorService extends AbstractExecutorService {
+
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.streams;
+
+import org.example.streams.Stream.Pair;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Sink of a distinct that spills to disk once its input does not fit in its memory budget, keeping the first
+ * occurrence of every element in encounter order.
+ * <p>
+ * An input that fits in the budget is deduplicated with a hash set. A larger input is tagged with the encounter
+ * index of every element and externally sorted by hash code, so equal elements end up next to each other and the
+ * first occurrence of each comes first. Those first occurrences are externally sorted back into encounter order.
+ * Elements therefore need a hash code and equals that survive the {@link SpillSerializer}.
+ *
+ * @param <T> The type of elements
+ */
+public class ExternalDistinctSink<T> extends ChainedSink<T, T> {
+
+    private final SpillOptions<Pair<Long, T>> indexedOptions;
+    private final ExecutorService executorService;
+    private final int maxInMemory;
+
+    private List<T> buffer = new ArrayList<>();
+    /** Elements tagged with their encounter index in hash order, created once the buffer exceeds the budget */
+    private ExternalSorter<Pair<Long, T>> byHash;
+    private long index = 0L;
+
+    /**
+     * @param downstream Sink receiving the first occurrence of every element
+     * @param options Memory budget, serializer and directory of the run files
+     * @param executorService Executor to sort and write runs on, null to do it on the calling thread
+     */
+    public ExternalDistinctSink(Sink<T> downstream, SpillOptions<T> options, ExecutorService executorService) {
+        super(downstream);
+        this.indexedOptions = new SpillOptions<>(options.maxInMemory(), indexed(options.serializer()), options.directory());
+        this.executorService = executorService;
+        this.maxInMemory = options.maxInMemory();
+    }
+
+    @Override
+    public void begin(long size) {
+    }
+
+    @Override
+    public void accept(T item) {
+        try {
+            if (byHash != null) {
+                byHash.add(new Pair<>(index++, item));
+                return;
+            }
+            buffer.add(item);
+            if (buffer.size() > maxInMemory) {
+                byHash = new ExternalSorter<>(Comparator.<Pair<Long, T>>comparingInt(entry -> Objects.hashCode(entry.value()))
+                        .thenComparing(Pair::key), indexedOptions, executorService);
+                for (T buffered : buffer) {
+                    byHash.add(new Pair<>(index++, buffered));
+                }
+                buffer = null;
+            }
+        } catch (RuntimeException e) {
+            if (byHash != null) {
+                byHash.close();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean cancellationRequested() {
+        return false; // a later duplicate can only be recognized once every element has been seen
+    }
+
+    @Override
+    public void end() {
+        downstream.begin(-1);
+        if (byHash == null) {
+            Set<T> seen = new HashSet<>();
+            for (T item : buffer) {
+                if (downstream.cancellationRequested()) {
+                    break;
+                }
+                if (seen.add(item)) {
+                    downstream.accept(item);
+                }
+            }
+            buffer = null;
+        } else {
+            ExternalSorter<Pair<Long, T>> byIndex = new ExternalSorter<>(Comparator.comparing(Pair::key), indexedOptions, executorService);
+            try {
+                byHash.drainTo(new FirstOccurrences<>(byIndex));
+                byHash.close();
+                byIndex.drainTo(new Sink<Pair<Long, T>>() {
+                    @Override
+                    public void accept(Pair<Long, T> entry) {
+                        downstream.accept(entry.value());
+                    }
+
+                    @Override
+                    public boolean cancellationRequested() {
+                        return downstream.cancellationRequested();
+                    }
+                });
+            } finally {
+                byHash.close();
+                byIndex.close();
+            }
+        }
+        downstream.end();
+    }
+
+    private static <T> SpillSerializer<Pair<Long, T>> indexed(SpillSerializer<T> serializer) {
+        return new SpillSerializer<>() {
+            @Override
+            public void write(Pair<Long, T> entry, DataOutput out) throws IOException {
+                out.writeLong(entry.key());
+                serializer.write(entry.value(), out);
+            }
+
+            @Override
+            public Pair<Long, T> read(DataInput in) throws IOException {
+                long position = in.readLong();
+                return new Pair<>(position, serializer.read(in));
+            }
+        };
+    }
+
+    /**
+     * Receives elements in hash order and passes on the first occurrence of each. Equal elements share a hash code,
+     * so only the distinct elements of the current hash code have to be remembered.
+     */
+    private static final class FirstOccurrences<T> implements Sink<Pair<Long, T>> {
+        private final ExternalSorter<Pair<Long, T>> byIndex;
+        private final List<T> sameHash = new ArrayList<>();
+        private int hash;
+
+        private FirstOccurrences(ExternalSorter<Pair<Long, T>> byIndex) {
+            this.byIndex = byIndex;
+        }
+
+        @Override
+        public void accept(Pair<Long, T> entry) {
+            int entryHash = Objects.hashCode(entry.value());
+            if (sameHash.isEmpty() || entryHash != hash) {
+                sameHash.clear();
+                hash = entryHash;
+            }
+            for (T seen : sameHash) {
+                if (Objects.equals(seen, entry.value())) {
+                    return;
+                }
+            }
+            sameHash.add(entry.value());
+            byIndex.add(entry);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.streams;
+
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Sink of a sort that spills sorted runs to disk once its memory budget is used up, and merges them back in sorted
+ * order when the input ends, see {@link ExternalSorter}.
+ *
+ * @param <T> The type of elements
+ */
+public class ExternalSortSink<T> extends ChainedSink<T, T> {
+
+    private final ExternalSorter<T> sorter;
+    private long count = 0L;
+
+    /**
+     * @param downstream Sink receiving the elements in sorted order
+     * @param comparator Sort order, null for natural order
+     * @param options Memory budget, serializer and directory of the run files
+     * @param executorService Executor to sort and write runs on, null to do it on the calling thread
+     */
+    @SuppressWarnings("unchecked")
+    public ExternalSortSink(Sink<T> downstream, Comparator<? super T> comparator, SpillOptions<T> options,
+                            ExecutorService executorService) {
+        super(downstream);
+        Comparator<? super T> order = comparator != null ? comparator : (Comparator<? super T>) Comparator.naturalOrder();
+        this.sorter = new ExternalSorter<>(order, options, executorService);
+    }
+
+    @Override
+    public void begin(long size) {
+    }
+
+    @Override
+    public void accept(T item) {
+        count++;
+        try {
+            sorter.add(item);
+        } catch (RuntimeException e) {
+            sorter.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean cancellationRequested() {
+        return false; // every element is needed before the first one can be emitted
+    }
+
+    @Override
+    public void end() {
+        downstream.begin(count);
+        try {
+            sorter.drainTo(downstream);
+        } finally {
+            sorter.close();
+        }
+        downstream.end();
+    }
+}
@@ -0,0 +1,281 @@
+package org.example.streams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts more elements than fit in memory by spilling sorted runs to files and merging them back.
+ * <p>
+ * Elements are buffered until the memory budget of the {@link SpillOptions} is used up, then the buffer is sorted and
+ * written to a run file. With an executor, runs are sorted and written on it while the next run is filled, and the
+ * budget is split between the runs held in memory at the same time. Once the input ends, the last buffer is sorted in
+ * memory and merged with the run files through a heap holding one element per run. The sort is stable: runs hold
+ * consecutive elements and ties are taken from the earlier run first.
+ * <p>
+ * Nothing is written to disk if the input fits in the budget. {@link #close()} deletes the run files.
+ *
+ * @param <T> The type of elements
+ */
+public class ExternalSorter<T> implements AutoCloseable {
+
+    /** Buffer size of the run files, per run being written or merged */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final Comparator<? super T> comparator;
+    private final SpillOptions<T> options;
+    private final ExecutorService executorService;
+    /** Elements per run */
+    private final int runSize;
+    /** Runs that may be sorted and written at the same time */
+    private final int maxPending;
+
+    private List<T> buffer = new ArrayList<>();
+    /** Runs on disk, in encounter order */
+    private final List<Run> runs = new ArrayList<>();
+    /** Runs being sorted and written on the executor, in encounter order */
+    private final Deque<Future<Run>> pending = new ArrayDeque<>();
+    private final List<RunReader> readers = new ArrayList<>();
+
+    private record Run(Path file, int size) {
+    }
+
+    /**
+     * @param comparator Sort order
+     * @param options Memory budget, serializer and directory of the run files
+     * @param executorService Executor to sort and write runs on, null to do it on the calling thread
+     */
+    public ExternalSorter(Comparator<? super T> comparator, SpillOptions<T> options, ExecutorService executorService) {
+        this.comparator = comparator;
+        this.options = options;
+        this.executorService = executorService;
+        this.maxPending = executorService == null ? 0
+                : Math.max(1, Math.min(ParallelSegment.parallelism(executorService), options.maxInMemory() - 1));
+        this.runSize = Math.max(1, options.maxInMemory() / (maxPending + 1));
+    }
+
+    public void add(T item) {
+        buffer.add(item);
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns true once elements have been written to disk
+     */
+    public boolean spilled() {
+        return !runs.isEmpty() || !pending.isEmpty();
+    }
+
+    /**
+     * Pushes the elements in sorted order to the sink until it requests cancellation. The begin and end calls of
+     * the sink are left to the caller.
+     * @param downstream Sink receiving the sorted elements
+     */
+    public void drainTo(Sink<? super T> downstream) {
+        List<T> last = buffer;
+        buffer = new ArrayList<>();
+        last.sort(comparator);
+        if (!spilled()) {
+            emit(last.iterator(), downstream);
+            return;
+        }
+        while (!pending.isEmpty()) {
+            runs.add(await(pending.poll()));
+        }
+        List<Iterator<T>> sources = new ArrayList<>(runs.size() + 1);
+        for (Run run : runs) {
+            RunReader reader = new RunReader(run);
+            readers.add(reader);
+            sources.add(reader);
+        }
+        sources.add(last.iterator());
+        merge(sources, downstream);
+    }
+
+    /**
+     * Stops the runs still being written and deletes every run file
+     */
+    @Override
+    public void close() {
+        buffer = new ArrayList<>();
+        try {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        } finally {
+            readers.clear();
+            deleteRuns();
+        }
+    }
+
+    private void deleteRuns() {
+        while (!pending.isEmpty()) {
+            Future<Run> future = pending.poll();
+            if (!future.cancel(false)) {
+                try {
+                    runs.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // the run deleted its own file when writing it failed
+                }
+            }
+        }
+        for (Run run : runs) {
+            delete(run.file());
+        }
+        runs.clear();
+    }
+
+    private void spill() {
+        List<T> run = buffer;
+        buffer = new ArrayList<>();
+        if (executorService == null) {
+            runs.add(write(run));
+            return;
+        }
+        while (pending.size() >= maxPending) {
+            runs.add(await(pending.poll()));
+        }
+        pending.add(executorService.submit(() -> write(run)));
+    }
+
+    private Run write(List<T> run) {
+        run.sort(comparator);
+        Path file = null;
+        try {
+            Files.createDirectories(options.directory());
+            file = Files.createTempFile(options.directory(), "stream-run-", ".bin");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE))) {
+                for (T item : run) {
+                    options.serializer().write(item, out);
+                }
+            }
+            return new Run(file, run.size());
+        } catch (IOException | RuntimeException e) {
+            if (file != null) {
+                delete(file);
+            }
+            throw new RuntimeException("Error while spilling a sorted run to disk", e);
+        }
+    }
+
+    private Run await(Future<Run> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CancellationException cancellation = new CancellationException("Stream was cancelled");
+            cancellation.initCause(e);
+            throw cancellation;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while spilling a sorted run to disk", e.getCause());
+        }
+    }
+
+    /**
+     * Merges sorted sources through a heap of their next elements, taking ties from the earlier source
+     */
+    private void merge(List<Iterator<T>> sources, Sink<? super T> downstream) {
+        Comparator<Head<T>> order = (a, b) -> comparator.compare(a.item, b.item);
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(sources.size(), order.thenComparingInt(head -> head.source));
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).hasNext()) {
+                heads.add(new Head<>(sources.get(i).next(), i));
+            }
+        }
+        while (!heads.isEmpty() && !downstream.cancellationRequested()) {
+            Head<T> head = heads.poll();
+            downstream.accept(head.item);
+            Iterator<T> source = sources.get(head.source);
+            if (source.hasNext()) {
+                head.item = source.next();
+                heads.add(head);
+            }
+        }
+    }
+
+    private void emit(Iterator<T> items, Sink<? super T> downstream) {
+        while (items.hasNext() && !downstream.cancellationRequested()) {
+            downstream.accept(items.next());
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while deleting a sorted run", e);
+        }
+    }
+
+    /**
+     * Next element of a source being merged, reused as the source advances
+     */
+    private static final class Head<T> {
+        private T item;
+        private final int source;
+
+        private Head(T item, int source) {
+            this.item = item;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Reads the elements of a run file back one at a time
+     */
+    private final class RunReader implements Iterator<T> {
+        private final DataInputStream in;
+        private int remaining;
+
+        private RunReader(Run run) {
+            try {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file()), IO_BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new RuntimeException("Error while reading a sorted run", e);
+            }
+            this.remaining = run.size();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            try {
+                remaining--;
+                return options.serializer().read(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Error while reading a sorted run", e);
+            }
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error while closing a sorted run", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.streams;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A reduction that can take elements back out of its container, maintained by a {@link MaterializedView}.
+ * <p>
+ * Unlike a {@link Collector}, every element added with the accumulator can later be removed with the retractor, so
+ * the result follows inserts and deletes of the source without reading it again. Removing an element that was never
+ * added leaves the container in an undefined state.
+ * <p>
+ * Example:
+ * <pre>
+ * IncrementalCollector<Order, ?, Map<String, Long>> perCustomer =
+ *     IncrementalCollector.groupingBy(Order::customerId, IncrementalCollector.counting());
+ * </pre>
+ *
+ * @param supplier Creates a new empty container
+ * @param accumulator Adds an element to a container
+ * @param retractor Removes an element previously added to a container
+ * @param finisher Turns the container into a result that stays valid while the container changes
+ * @param <T> The type of elements collected
+ * @param <A> The type of the container
+ * @param <R> The type of the result
+ */
+public record IncrementalCollector<T, A, R>(Supplier<A> supplier, BiConsumer<A, T> accumulator,
+                                            BiConsumer<A, T> retractor, Function<A, R> finisher) {
+
+    public IncrementalCollector {
+        if (supplier == null || accumulator == null || retractor == null || finisher == null) {
+            throw new IllegalArgumentException("Supplier, Accumulator, Retractor and Finisher cannot be null");
+        }
+    }
+
+    /**
+     * Counts the elements
+     */
+    public static <T> IncrementalCollector<T, long[], Long> counting() {
+        return new IncrementalCollector<>(() -> new long[1], (count, item) -> count[0]++, (count, item) -> count[0]--,
+                count -> count[0]);
+    }
+
+    /**
+     * Sums a long value extracted from every element
+     * @param mapper Function to extract the value
+     * @return Collector of the sum
+     * @throws IllegalArgumentException if mapper is null
+     */
+    public static <T> IncrementalCollector<T, long[], Long> summingLong(ToLongFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return new IncrementalCollector<>(() -> new long[1], (sum, item) -> sum[0] += mapper.applyAsLong(item),
+                (sum, item) -> sum[0] -= mapper.applyAsLong(item), sum -> sum[0]);
+    }
+
+    /**
+     * Sums a double value extracted from every element, with the compensation of {@link CompensatedSum} so that
+     * adding and removing many values does not let rounding errors build up
+     * @param mapper Function to extract the value
+     * @return Collector of the sum
+     * @throws IllegalArgumentException if mapper is null
+     */
+    public static <T> IncrementalCollector<T, CompensatedSum, Double> summingDouble(ToDoubleFunction<T> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return new IncrementalCollector<>(CompensatedSum::new, (sum, item) -> sum.add(mapper.applyAsDouble(item)),
+                (sum, item) -> sum.add(-mapper.applyAsDouble(item)), CompensatedSum::sum);
+    }
+
+    /**
+     * Groups the elements by key, maintaining each group with the downstream collector. A group is dropped once its
+     * last element is removed, and every result is a new map.
+     * <p>
+     * Example:
+     * <pre>
+     * IncrementalCollector<String, ?, Map<Integer, Long>> byLength =
+     *     IncrementalCollector.groupingBy(String::length, IncrementalCollector.counting());
+     * </pre>
+     *
+     * @param classifier Function to extract the key, must return the same key when an element is removed
+     * @param downstream Collector for the elements of one group
+     * @return Collector into a grouped map
+     * @throws IllegalArgumentException if classifier or downstream is null
+     */
+    public static <T, K, A, D> IncrementalCollector<T, Map<K, Group<A>>, Map<K, D>> groupingBy(Function<T, K> classifier,
+                                                                                           IncrementalCollector<T, A, D> downstream) {
+        if (classifier == null || downstream == null) {
+            throw new IllegalArgumentException("Classifier and Downstream cannot be null");
+        }
+        return new IncrementalCollector<>(HashMap::new, (groups, item) -> {
+            Group<A> group = groups.computeIfAbsent(classifier.apply(item), key -> new Group<>(downstream.supplier().get()));
+            downstream.accumulator().accept(group.container, item);
+            group.size++;
+        }, (groups, item) -> {
+            K key = classifier.apply(item);
+            Group<A> group = groups.get(key);
+            if (group == null) {
+                return;
+            }
+            downstream.retractor().accept(group.container, item);
+            if (--group.size == 0) {
+                groups.remove(key);
+            }
+        }, groups -> {
+            Map<K, D> result = new HashMap<>(groups.size() * 2);
+            groups.forEach((key, group) -> result.put(key, downstream.finisher().apply(group.container)));
+            return result;
+        });
+    }
+
+    /**
+     * Container of one group and the number of elements in it
+     */
+    public static final class Group<A> {
+        private final A container;
+        private long size;
+
+        private Group(A container) {
+            this.container = container;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.streams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the lines of a file in a byte range, read through a buffered {@link FileChannel}.
+ * <p>
+ * Splitting cuts the byte range in half, so parallel streams read separate regions of the file concurrently.
+ * A range owns every line that starts inside it: a range not starting at the beginning of the file skips
+ * the partial line it starts in, and the last line of a range is read past its end up to the line break.
+ * Lines end at {@code \n}, a trailing {@code \r} is dropped.
+ * <p>
+ * All splits share one channel, which is closed through {@link #close()} of the spliterator that opened it.
+ * <p>
+ * Example:
+ * <pre>
+ * try (LineSpliterator lines = new LineSpliterator(Path.of("access.log"), StandardCharsets.UTF_8)) {
+ *     lines.forEachRemaining(System.out::println);
+ * }
+ * </pre>
+ */
+public class LineSpliterator implements Spliterator<String>, AutoCloseable {
+
+    /** Bytes read from the file at a time */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Ranges smaller than this are not split any further */
+    private static final long MIN_SPLIT_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final Charset charset;
+    private final long size;
+
+    /** Start of the range, lines starting before it belong to the previous range */
+    private long start;
+    /** End of the range, lines starting at or after it belong to the next range */
+    private final long end;
+
+    private boolean started;
+    private byte[] buffer;
+    /** File position of the first byte in the buffer */
+    private long bufferStart;
+    private int offset;
+    private int limit;
+    /** Collects lines that do not fit in the buffer at once */
+    private byte[] line;
+
+    /**
+     * Opens the file and creates a spliterator over all of its lines
+     * @param path File to read
+     * @param charset Charset of the file, encoding a line break as the single byte {@code \n}
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    public LineSpliterator(Path path, Charset charset) {
+        if (!isSupported(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " does not encode a line break as a single byte");
+        }
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while opening " + path, e);
+        }
+        this.ownsChannel = true;
+        this.charset = charset;
+        this.start = 0;
+        this.end = size;
+    }
+
+    private LineSpliterator(FileChannel channel, Charset charset, long size, long start, long end) {
+        this.channel = channel;
+        this.ownsChannel = false;
+        this.charset = charset;
+        this.size = size;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns true if the charset encodes a line break as the single byte {@code \n}, so lines can be found in raw bytes
+     */
+    public static boolean isSupported(Charset charset) {
+        return Arrays.equals("\n".getBytes(charset), new byte[]{'\n'});
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (!started) {
+            started = true;
+            buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, size - start + 1))];
+            bufferStart = start;
+            if (start > 0) {
+                // the byte before the range tells whether the range starts a new line
+                bufferStart = start - 1;
+                skipLine();
+            }
+        }
+        if (bufferStart + offset >= end || bufferStart + offset >= size) {
+            return false;
+        }
+        action.accept(readLine());
+        return true;
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (started || end - start < 2 * MIN_SPLIT_SIZE) {
+            return null;
+        }
+        long mid = start + (end - start) / 2;
+        Spliterator<String> prefix = new LineSpliterator(channel, charset, size, start, mid);
+        start = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return started ? Math.max(0, end - bufferStart - offset) : end - start;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    @Override
+    public void close() {
+        if (!ownsChannel) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while closing the file", e);
+        }
+    }
+
+    private void skipLine() {
+        while (fillIfEmpty()) {
+            while (offset < limit) {
+                if (buffer[offset++] == '\n') {
+                    return;
+                }
+            }
+        }
+    }
+
+    private String readLine() {
+        int length = 0;
+        while (fillIfEmpty()) {
+            int from = offset;
+            while (offset < limit && buffer[offset] != '\n') {
+                offset++;
+            }
+            boolean lineBreak = offset < limit;
+            if (lineBreak && length == 0) {
+                // the whole line is in the buffer, decode it without copying
+                offset++;
+                return decode(buffer, from, offset - 1 - from);
+            }
+            length = append(length, from, offset - from);
+            if (lineBreak) {
+                offset++;
+                break;
+            }
+        }
+        return decode(line, 0, length);
+    }
+
+    private int append(int length, int from, int count) {
+        if (line == null || line.length < length + count) {
+            line = Arrays.copyOf(line == null ? new byte[0] : line, Math.max(2 * (length + count), 128));
+        }
+        System.arraycopy(buffer, from, line, length, count);
+        return length + count;
+    }
+
+    private String decode(byte[] bytes, int from, int length) {
+        if (length > 0 && bytes[from + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, from, length, charset);
+    }
+
+    /**
+     * Reads the next block of the file once the buffer is used up
+     * @return false at the end of the file
+     */
+    private boolean fillIfEmpty() {
+        if (offset < limit) {
+            return true;
+        }
+        bufferStart += limit;
+        offset = 0;
+        limit = 0;
+        try {
+            int read = channel.read(ByteBuffer.wrap(buffer), bufferStart);
+            limit = Math.max(read, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while reading the file", e);
+        }
+        return limit > 0;
+    }
+}
@@ -0,0 +1,416 @@
+package org.example.streams;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.LongSummaryStatistics;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * A stream of primitive long values, backed by an array or by a range computed on demand.
+ * <p>
+ * Stages are fused into a single chain of {@link Sink.OfLong} sinks, so numeric pipelines run
+ * without boxing a value or allocating per element.
+ * <p>
+ * Example usage:
+ * <pre>
+ * long sum = LongStream.of(1L, 2L, 3L, 4L)
+ *     .filter(n -> n > 2)
+ *     .map(n -> n * 2)
+ *     .sum(); // Returns 14
+ * </pre>
+ */
+public class LongStream {
+
+    /** Supplies a fresh spliterator over the source values for every terminal operation */
+    private final Supplier<Spliterator.OfLong> source;
+
+    /** Wraps the terminal sink with the sinks of all stages */
+    private final UnaryOperator<Sink.OfLong> stages;
+
+    private LongStream(Supplier<Spliterator.OfLong> source, UnaryOperator<Sink.OfLong> stages) {
+        this.source = source;
+        this.stages = stages;
+    }
+
+    /**
+     * Creates a stream over the given values
+     * @param values The source values
+     * @return Stream of the values
+     * @throws IllegalArgumentException if values is null
+     */
+    public static LongStream of(long... values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Array cannot be null");
+        }
+        return new LongStream(() -> Arrays.spliterator(values), UnaryOperator.identity());
+    }
+
+    /**
+     * Creates a stream of the values from startInclusive to endExclusive, computed on demand
+     * @param startInclusive First value of the range
+     * @param endExclusive Upper bound of the range, not included
+     * @return Stream of the range, empty if endExclusive is not greater than startInclusive
+     */
+    public static LongStream range(long startInclusive, long endExclusive) {
+        long size = Math.max(0, endExclusive - startInclusive);
+        int characteristics = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.IMMUTABLE;
+        return new LongStream(() -> new Spliterators.AbstractLongSpliterator(size, characteristics) {
+            private long next = startInclusive;
+
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                if (next >= endExclusive) {
+                    return false;
+                }
+                action.accept(next++);
+                return true;
+            }
+        }, UnaryOperator.identity());
+    }
+
+    private LongStream appendStage(UnaryOperator<Sink.OfLong> stage) {
+        return new LongStream(source, downstream -> stages.apply(stage.apply(downstream)));
+    }
+
+    /**
+     * Filters values based on the given predicate
+     * @param predicate Condition to test values against
+     * @return Stream containing only values that match the predicate
+     * @throws IllegalArgumentException if predicate is null
+     */
+    public LongStream filter(LongPredicate predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Predicate cannot be null");
+        }
+        return appendStage(downstream -> new ChainedSink.OfLong(downstream) {
+            @Override
+            public void accept(long value) {
+                if (predicate.test(value)) {
+                    downstream.accept(value);
+                }
+            }
+        });
+    }
+
+    /**
+     * Maps values to new values using the provided function
+     * @param mapper Function to transform values
+     * @return Stream containing transformed values
+     * @throws IllegalArgumentException if mapper is null
+     */
+    public LongStream map(LongUnaryOperator mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return appendStage(downstream -> new ChainedSink.OfLong(downstream) {
+            @Override
+            public void begin(long size) {
+                downstream.begin(size);
+            }
+
+            @Override
+            public void accept(long value) {
+                downstream.accept(mapper.applyAsLong(value));
+            }
+        });
+    }
+
+    /**
+     * Peeks at each value in the stream and applies the given consumer
+     * @param consumer Consumer to apply to each value
+     * @return Stream with the consumer applied to each value
+     * @throws IllegalArgumentException if consumer is null
+     */
+    public LongStream peek(LongConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer cannot be null");
+        }
+        return appendStage(downstream -> new ChainedSink.OfLong(downstream) {
+            @Override
+            public void begin(long size) {
+                downstream.begin(size);
+            }
+
+            @Override
+            public void accept(long value) {
+                consumer.accept(value);
+                downstream.accept(value);
+            }
+        });
+    }
+
+    /**
+     * Skips the first n values in the stream
+     * @param n Number of values to skip
+     * @return Stream with the first n values skipped
+     * @throws IllegalArgumentException if n is negative
+     */
+    public LongStream skip(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Skip count cannot be negative");
+        }
+        return appendStage(downstream -> new ChainedSink.OfLong(downstream) {
+            private long skipped = 0;
+
+            @Override
+            public void accept(long value) {
+                if (skipped >= n) {
+                    downstream.accept(value);
+                } else {
+                    skipped++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Limits the stream to its first n values, without pulling any further values from the source
+     * @param n Number of values to keep
+     * @return Stream containing the first n values
+     * @throws IllegalArgumentException if n is negative
+     */
+    public LongStream limit(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        return appendStage(downstream -> new ChainedSink.OfLong(downstream) {
+            private long count = 0;
+
+            @Override
+            public void accept(long value) {
+                if (count < n) {
+                    count++;
+                    downstream.accept(value);
+                }
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return count >= n || downstream.cancellationRequested();
+            }
+        });
+    }
+
+    /**
+     * Returns a stream sorted in ascending order
+     * @return Sorted stream
+     */
+    public LongStream sorted() {
+        return appendStage(downstream -> new ChainedSink.OfLong(downstream) {
+            private long[] buffer;
+            private int size;
+
+            @Override
+            public void begin(long size) {
+                buffer = new long[size >= 0 ? (int) size : 16];
+            }
+
+            @Override
+            public void accept(long value) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(16, size * 2));
+                }
+                buffer[size++] = value;
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return false;
+            }
+
+            @Override
+            public void end() {
+                Arrays.sort(buffer, 0, size);
+                downstream.begin(size);
+                for (int i = 0; i < size && !downstream.cancellationRequested(); i++) {
+                    downstream.accept(buffer[i]);
+                }
+                buffer = null;
+                downstream.end();
+            }
+        });
+    }
+
+    /**
+     * Maps each value to an object, producing a {@link Stream} that pulls the values through the stages of this
+     * stream one at a time, so a downstream limit or find stops this stream's source as well
+     * @param mapper Function to transform values
+     * @return Stream of the mapped objects
+     * @throws IllegalArgumentException if mapper is null
+     */
+    public <U> Stream<U> mapToObj(LongFunction<U> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        return Stream.fromSource(() -> new SinkSpliterator<U>(source,
+                emit -> stages.apply(value -> emit.accept(mapper.apply(value)))));
+    }
+
+    /**
+     * Boxes each value, producing a {@link Stream} of {@link Long}
+     * @return Stream of the boxed values
+     */
+    public Stream<Long> boxed() {
+        return mapToObj(Long::valueOf);
+    }
+
+    /**
+     * Executes a consumer for each value in the stream
+     * @param consumer Consumer to apply to each value
+     * @throws IllegalArgumentException if consumer is null
+     */
+    public void forEach(LongConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer cannot be null");
+        }
+        evaluate(consumer::accept);
+    }
+
+    /**
+     * Reduces the values to a single value using an accumulator function
+     * @param identity Initial value for reduction
+     * @param accumulator Function to combine values
+     * @return Reduced result
+     * @throws IllegalArgumentException if accumulator is null
+     */
+    public long reduce(long identity, LongBinaryOperator accumulator) {
+        if (accumulator == null) {
+            throw new IllegalArgumentException("Accumulator cannot be null");
+        }
+        long[] result = {identity};
+        evaluate(value -> result[0] = accumulator.applyAsLong(result[0], value));
+        return result[0];
+    }
+
+    /**
+     * Calculates the sum of the values
+     * @return Sum of the values, 0 if the stream is empty
+     */
+    public long sum() {
+        long[] sum = {0};
+        evaluate(value -> sum[0] += value);
+        return sum[0];
+    }
+
+    /**
+     * Finds the minimum value
+     * @return Minimum value, or empty if the stream is empty
+     */
+    public OptionalLong min() {
+        LongSummaryStatistics statistics = summaryStatistics();
+        return statistics.getCount() == 0 ? OptionalLong.empty() : OptionalLong.of(statistics.getMin());
+    }
+
+    /**
+     * Finds the maximum value
+     * @return Maximum value, or empty if the stream is empty
+     */
+    public OptionalLong max() {
+        LongSummaryStatistics statistics = summaryStatistics();
+        return statistics.getCount() == 0 ? OptionalLong.empty() : OptionalLong.of(statistics.getMax());
+    }
+
+    /**
+     * Calculates the average of the values
+     * @return Average of the values, 0.0 if the stream is empty
+     */
+    public double average() {
+        return summaryStatistics().getAverage();
+    }
+
+    /**
+     * Counts the values in the stream
+     * @return Number of values
+     */
+    public long count() {
+        long[] count = {0};
+        evaluate(value -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Collects count, sum, min, max and average of the values in a single pass
+     * @return Statistics of the values
+     */
+    public LongSummaryStatistics summaryStatistics() {
+        LongSummaryStatistics statistics = new LongSummaryStatistics();
+        evaluate(statistics::accept);
+        return statistics;
+    }
+
+    /**
+     * Checks if any value matches the given predicate, stopping at the first match
+     * @param predicate Predicate to test values against
+     * @return true if any value matches the predicate, false otherwise
+     * @throws IllegalArgumentException if predicate is null
+     */
+    public boolean anyMatch(LongPredicate predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Predicate cannot be null");
+        }
+        return filter(predicate).limit(1).count() > 0;
+    }
+
+    /**
+     * Checks if all values match the given predicate, stopping at the first mismatch
+     * @param predicate Predicate to test values against
+     * @return true if all values match the predicate, false otherwise
+     * @throws IllegalArgumentException if predicate is null
+     */
+    public boolean allMatch(LongPredicate predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Predicate cannot be null");
+        }
+        return !anyMatch(predicate.negate());
+    }
+
+    /**
+     * Checks if no values match the given predicate, stopping at the first match
+     * @param predicate Predicate to test values against
+     * @return true if no value matches the predicate, false otherwise
+     * @throws IllegalArgumentException if predicate is null
+     */
+    public boolean noneMatch(LongPredicate predicate) {
+        return !anyMatch(predicate);
+    }
+
+    /**
+     * Collects the values into an array
+     * @return Array containing the values of the stream
+     */
+    public long[] toArray() {
+        long[][] buffer = {new long[16]};
+        int[] size = {0};
+        evaluate(value -> {
+            if (size[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+            }
+            buffer[0][size[0]++] = value;
+        });
+        return Arrays.copyOf(buffer[0], size[0]);
+    }
+
+    /**
+     * Pushes the source values through the stages into the given terminal sink
+     * @param terminal Sink receiving the output of the last stage
+     */
+    private void evaluate(Sink.OfLong terminal) {
+        Spliterator.OfLong spliterator = source.get();
+        Sink.OfLong sink = stages.apply(terminal);
+        sink.begin(spliterator.getExactSizeIfKnown());
+        do {
+            if (sink.cancellationRequested()) {
+                break;
+            }
+        } while (spliterator.tryAdvance((LongConsumer) sink));
+        sink.end();
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.streams;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The result of a stream aggregation over an {@link ObservableCollection}, kept up to date as the collection changes.
+ * <p>
+ * The view reads the collection once when it is created. After that every inserted element is passed through the
+ * stages and added to the container of the {@link IncrementalCollector}, and every removed element is passed through
+ * the same stages and retracted, so a change costs the work of the elements it touches instead of a full
+ * recomputation. The stages must therefore be deterministic, and only filter, map, flatMap, mapMulti and peek are
+ * supported; parallel stages run sequentially on the mutating thread.
+ * <p>
+ * Reads and updates are synchronized, so {@link #get()} may be called from any thread while the collection is being
+ * changed. {@link #close()} stops following the collection.
+ * <p>
+ * Example:
+ * <pre>
+ * ObservableCollection<Order> orders = new ObservableCollection<>(loadOrders());
+ * MaterializedView<Order, Map<String, Long>> paidPerCustomer = MaterializedView.of(orders,
+ *     stream -> stream.filter(Order::isPaid).map(Order::customerId),
+ *     IncrementalCollector.groupingBy(id -> id, IncrementalCollector.counting()));
+ *
+ * orders.add(newOrder);
+ * paidPerCustomer.get(); // Counts including newOrder, computed from the previous counts
+ * </pre>
+ *
+ * @param <T> The type of the source elements
+ * @param <R> The type of the result
+ */
+public final class MaterializedView<T, R> implements AutoCloseable {
+
+    private final ObservableCollection<T> source;
+    private final Sink<Object> inserts;
+    private final Sink<Object> deletes;
+    private final Supplier<R> result;
+    private final ObservableCollection.Listener<T> listener = new ObservableCollection.Listener<>() {
+        @Override
+        public void added(T item) {
+            synchronized (MaterializedView.this) {
+                inserts.accept(item);
+            }
+        }
+
+        @Override
+        public void removed(T item) {
+            synchronized (MaterializedView.this) {
+                deletes.accept(item);
+            }
+        }
+    };
+
+    private MaterializedView(ObservableCollection<T> source, Sink<Object> inserts, Sink<Object> deletes, Supplier<R> result) {
+        this.source = source;
+        this.inserts = inserts;
+        this.deletes = deletes;
+        this.result = result;
+    }
+
+    /**
+     * Creates a view over the collection, computing the result from its current elements
+     * @param source Collection to follow
+     * @param shape Applies the stages to a template stream, called once
+     * @param collector Maintains the result
+     * @return View following the collection until it is closed
+     * @throws IllegalArgumentException if an argument is null, or the shape has stages a view cannot maintain
+     */
+    public static <T, U, A, R> MaterializedView<T, R> of(ObservableCollection<T> source, Function<Stream<T>, Stream<U>> shape,
+                                                          IncrementalCollector<U, A, R> collector) {
+        if (source == null || shape == null || collector == null) {
+            throw new IllegalArgumentException("Source, Shape and Collector cannot be null");
+        }
+        Stream<U> shaped = shape.apply(Stream.template());
+        if (shaped == null) {
+            throw new IllegalArgumentException("Shape cannot return null");
+        }
+        A container = collector.supplier().get();
+        Sink<Object> inserts = shaped.deltaChain(item -> collector.accumulator().accept(container, item));
+        Sink<Object> deletes = shaped.deltaChain(item -> collector.retractor().accept(container, item));
+        MaterializedView<T, R> view = new MaterializedView<>(source, inserts, deletes, () -> collector.finisher().apply(container));
+        synchronized (view) {
+            for (T item : source) {
+                inserts.accept(item);
+            }
+            source.addListener(view.listener);
+        }
+        return view;
+    }
+
+    /**
+     * Returns the result for the current elements of the collection
+     */
+    public synchronized R get() {
+        return result.get();
+    }
+
+    /**
+     * Stops following the collection, the result stays as it was
+     */
+    @Override
+    public void close() {
+        source.removeListener(listener);
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.streams;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator merging two spliterators that are sorted by the same comparator into one sorted sequence.
+ * <p>
+ * Only the next element of each side is held, so merging never materializes either side. Equal elements are
+ * taken from the left side first, which keeps the merge stable.
+ *
+ * @param <T> The type of elements
+ */
+public class MergeSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private final Spliterator<T> left;
+    private final Spliterator<T> right;
+    private final Comparator<? super T> comparator;
+    private T leftHead;
+    private T rightHead;
+    private boolean hasLeft;
+    private boolean hasRight;
+    private boolean started;
+
+    /**
+     * @param left Sorted left side
+     * @param right Sorted right side
+     * @param comparator Order of both sides
+     */
+    public MergeSpliterator(Spliterator<T> left, Spliterator<T> right, Comparator<? super T> comparator) {
+        super(sizeOf(left, right), Spliterator.ORDERED);
+        this.left = left;
+        this.right = right;
+        this.comparator = comparator;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (!started) {
+            started = true;
+            advanceLeft();
+            advanceRight();
+        }
+        if (hasLeft && (!hasRight || comparator.compare(leftHead, rightHead) <= 0)) {
+            T item = leftHead;
+            advanceLeft();
+            action.accept(item);
+            return true;
+        }
+        if (hasRight) {
+            T item = rightHead;
+            advanceRight();
+            action.accept(item);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            ReducePipeline.close(left);
+        } finally {
+            ReducePipeline.close(right);
+        }
+    }
+
+    private void advanceLeft() {
+        leftHead = null;
+        hasLeft = left.tryAdvance(item -> leftHead = item);
+    }
+
+    private void advanceRight() {
+        rightHead = null;
+        hasRight = right.tryAdvance(item -> rightHead = item);
+    }
+
+    private static long sizeOf(Spliterator<?> left, Spliterator<?> right) {
+        long size = left.estimateSize() + right.estimateSize();
+        return size < 0 ? Long.MAX_VALUE : size;
+    }
+}
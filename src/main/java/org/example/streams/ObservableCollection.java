@@ -0,0 +1,147 @@
+package org.example.streams;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A collection that tells its listeners about every element added or removed, the source of a
+ * {@link MaterializedView}.
+ * <p>
+ * Listeners are called on the mutating thread right after the change, removals through the iterator and
+ * {@link #clear()} included. An element that changes in place is not seen, so update elements by removing the old
+ * value and adding the new one. Like the collection it wraps, this class is not thread-safe for writers.
+ * <p>
+ * Example:
+ * <pre>
+ * ObservableCollection<Order> orders = new ObservableCollection<>();
+ * orders.addListener(new ObservableCollection.Listener<>() {
+ *     public void added(Order order) { ... }
+ *     public void removed(Order order) { ... }
+ * });
+ * orders.add(order); // Calls added(order)
+ * </pre>
+ *
+ * @param <T> The type of elements
+ */
+public class ObservableCollection<T> extends AbstractCollection<T> {
+
+    private final Collection<T> elements;
+    private final List<Listener<T>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Receives the changes of an observable collection
+     */
+    public interface Listener<T> {
+
+        void added(T item);
+
+        void removed(T item);
+    }
+
+    /**
+     * Creates an empty collection backed by an {@link ArrayList}
+     */
+    public ObservableCollection() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Creates a collection over the given elements, which must only be changed through this collection from now on
+     * @param elements Backing collection, not copied
+     * @throws IllegalArgumentException if elements is null
+     */
+    public ObservableCollection(Collection<T> elements) {
+        if (elements == null) {
+            throw new IllegalArgumentException("Elements cannot be null");
+        }
+        this.elements = elements;
+    }
+
+    public void addListener(Listener<T> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public boolean add(T item) {
+        if (!elements.add(item)) {
+            return false;
+        }
+        for (Listener<T> listener : listeners) {
+            listener.added(item);
+        }
+        return true;
+    }
+
+    /**
+     * Removes one element equal to the given object, the listeners receive the element that was stored
+     */
+    @Override
+    public boolean remove(Object o) {
+        Iterator<T> iterator = iterator();
+        while (iterator.hasNext()) {
+            if (Objects.equals(iterator.next(), o)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return elements.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<T> iterator = elements.iterator();
+        return new Iterator<>() {
+            private T last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                last = iterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                for (Listener<T> listener : listeners) {
+                    listener.removed(last);
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the backing collection directly, so parallel streams split it as they would split the collection itself
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return elements.spliterator();
+    }
+}
@@ -3,7 +3,17 @@ package org.example.streams;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Future of a task running on an executor, rethrowing its failures unchecked.
+ * <p>
+ * Cancelling the future with {@code mayInterruptIfRunning} interrupts the running task, and a cancelled future
+ * throws {@link java.util.concurrent.CancellationException} from get. An interrupted caller gets its interrupt
+ * status back before the failure is rethrown.
+ *
+ * @param <T> The type of the result
+ */
 public class ParallelFuture<T> implements AbstractStreamFuture<T> {
 
     private final Future<T> future;
@@ -31,17 +41,30 @@ public class ParallelFuture<T> implements AbstractStreamFuture<T> {
     public T get() {
         try {
             return future.get();
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while getting the result from future", e);
+        } catch (ExecutionException e) {
             throw new RuntimeException("Error while getting the result from future", e);
         }
     }
 
+    /**
+     * Waits at most the given time for the result
+     * @throws RuntimeException caused by a {@link TimeoutException} if the result is not ready in time,
+     * the task keeps running
+     */
     @Override
     public T get(long timeout, TimeUnit unit) {
         try {
-            return future.get();
-        } catch (InterruptedException | ExecutionException e) {
+            return future.get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while getting the result from future", e);
+        } catch (ExecutionException e) {
             throw new RuntimeException("Error while getting the result from future", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Timed out after " + timeout + " " + unit + " while getting the result from future", e);
         }
     }
 }
@@ -0,0 +1,109 @@
+package org.example.streams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Stable merge sort that sorts and merges runs of an array on an executor.
+ * <p>
+ * The array is cut into one run per worker, the runs are sorted concurrently and then merged pairwise,
+ * halving the number of runs every round until a single sorted run is left. Small arrays are sorted
+ * on the calling thread.
+ * <p>
+ * Example:
+ * <pre>
+ * Integer[] items = {3, 1, 4, 2};
+ * ParallelMergeSort.sort(items, Integer::compareTo, executorService); // items is [1, 2, 3, 4]
+ * </pre>
+ */
+public class ParallelMergeSort {
+
+    /** Runs smaller than this are not worth a task of their own */
+    private static final int MIN_RUN = 8192;
+
+    private ParallelMergeSort() {
+    }
+
+    /**
+     * Sorts the array in place
+     * @param items Array to sort
+     * @param comparator Order of the elements, null for natural order
+     * @param executorService Executor running the sort and merge tasks
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void sort(T[] items, Comparator<? super T> comparator, ExecutorService executorService) {
+        if (items == null) {
+            throw new IllegalArgumentException("Items cannot be null");
+        }
+        if (executorService == null) {
+            throw new IllegalArgumentException("ExecutorService cannot be null");
+        }
+        Comparator<? super T> order = comparator != null ? comparator : (Comparator<? super T>) Comparator.naturalOrder();
+        int runs = Math.min(ParallelSegment.parallelism(executorService), items.length / MIN_RUN);
+        if (runs < 2) {
+            Arrays.sort(items, order);
+            return;
+        }
+
+        int[] bounds = new int[runs + 1];
+        for (int i = 0; i <= runs; i++) {
+            bounds[i] = (int) ((long) items.length * i / runs);
+        }
+        List<AbstractStreamFuture<?>> tasks = new ArrayList<>(runs);
+        for (int i = 0; i < runs; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            tasks.add(new ParallelFuture<>(executorService.submit(() -> Arrays.sort(items, from, to, order))));
+        }
+        await(tasks);
+
+        T[] source = items;
+        T[] target = items.clone();
+        while (bounds.length > 2) {
+            int[] merged = new int[bounds.length / 2 + 1];
+            for (int i = 0; i + 1 < bounds.length; i += 2) {
+                int from = bounds[i];
+                int middle = bounds[i + 1];
+                int to = i + 2 < bounds.length ? bounds[i + 2] : middle;
+                T[] left = source;
+                T[] right = target;
+                tasks.add(new ParallelFuture<>(executorService.submit(() -> merge(left, right, from, middle, to, order))));
+                merged[i / 2] = from;
+            }
+            merged[merged.length - 1] = items.length;
+            await(tasks);
+            bounds = merged;
+            T[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != items) {
+            System.arraycopy(source, 0, items, 0, items.length);
+        }
+    }
+
+    /**
+     * Merges the sorted ranges [from, middle) and [middle, to) of source into the same range of target,
+     * taking the left element first on ties so the sort stays stable
+     */
+    private static <T> void merge(T[] source, T[] target, int from, int middle, int to, Comparator<? super T> order) {
+        int left = from;
+        int right = middle;
+        int out = from;
+        while (left < middle && right < to) {
+            target[out++] = order.compare(source[right], source[left]) < 0 ? source[right++] : source[left++];
+        }
+        System.arraycopy(source, left, target, out, middle - left);
+        System.arraycopy(source, right, target, out + middle - left, to - right);
+    }
+
+    private static void await(List<AbstractStreamFuture<?>> tasks) {
+        for (AbstractStreamFuture<?> task : tasks) {
+            task.get();
+        }
+        tasks.clear();
+    }
+}
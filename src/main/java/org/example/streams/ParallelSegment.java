@@ -0,0 +1,198 @@
+package org.example.streams;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A run of consecutive parallel stages that is executed chunk by chunk on an executor.
+ * <p>
+ * When the run reads straight from the source, the source spliterator is split into chunks sized
+ * from the element count and the executor parallelism. Each chunk is pushed through the fused stages
+ * of the run into a chunk-local list, and the lists are handed downstream through a {@link ReorderBuffer},
+ * in encounter order or, for unordered streams, in the order the chunks complete.
+ * A run that starts after a sequential stage receives its input one element at a time and falls
+ * back to one task per element through {@link AsyncSink}.
+ * <p>
+ * Chunks hold at most {@link #MAX_CHUNK_SIZE} elements and the source is only split as far as the next chunk,
+ * while a window of tasks is in flight at a time. A run over an arbitrarily large source therefore keeps a fixed
+ * number of elements in memory, and the window keeps every worker busy.
+ *
+ * @param <IN> The type of elements entering the run
+ * @param <OUT> The type of elements leaving the run
+ */
+public class ParallelSegment<IN, OUT> {
+
+    /** Chunks created per worker thread, so that uneven chunks can still be balanced */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Chunk size used when the source cannot report its size */
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    /** Largest chunk, which bounds the outputs a chunk holds on to until it is handed downstream */
+    private static final int MAX_CHUNK_SIZE = 1 << 14;
+
+    private final List<TransformPipeline<?, ?>> transformPipelines;
+    private final ExecutorService executorService;
+    private final boolean inCompletionOrder;
+    /** Tasks that may be in flight at the same time */
+    private final int maxInFlight;
+
+    /**
+     * @param transformPipelines Stages of the run
+     * @param executorService Executor the stages run on
+     * @param inCompletionOrder True to hand outputs downstream in the order the tasks complete
+     * @param maxInFlight Tasks that may be in flight at the same time, 0 for a few tasks per worker thread
+     */
+    public ParallelSegment(List<TransformPipeline<?, ?>> transformPipelines, ExecutorService executorService,
+                           boolean inCompletionOrder, int maxInFlight) {
+        this.transformPipelines = transformPipelines;
+        this.executorService = executorService;
+        this.inCompletionOrder = inCompletionOrder;
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : parallelism(executorService) * CHUNKS_PER_THREAD;
+    }
+
+    /**
+     * Splits the source into chunks, runs them on the executor and pushes the outputs to the downstream sink
+     * @param source Source of the elements entering the run
+     * @param downstream Sink receiving the outputs
+     */
+    public void run(Spliterator<IN> source, Sink<OUT> downstream) {
+        long chunkSize = chunkSize(source.estimateSize());
+        Deque<Spliterator<IN>> splits = new ArrayDeque<>();
+        splits.push(source);
+        ReorderBuffer<OUT> pending = new ReorderBuffer<>(inCompletionOrder);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        downstream.begin(-1);
+        try {
+            Spliterator<IN> chunk;
+            while (!downstream.cancellationRequested() && (chunk = nextChunk(splits, chunkSize)) != null) {
+                ReducePipeline.checkInterrupted();
+                // make room in the window before the next chunk goes in flight
+                drain(pending, downstream, cancelled, maxInFlight - 1);
+                if (downstream.cancellationRequested()) {
+                    break;
+                }
+                if (pending.inFlight() == 0 && splits.isEmpty()) {
+                    // the source could not be split, so there is nothing to run concurrently with
+                    pending.complete(apply(chunk, cancelled));
+                } else {
+                    Spliterator<IN> task = chunk;
+                    pending.submit(executorService, () -> apply(task, cancelled));
+                }
+            }
+            drain(pending, downstream, cancelled, 0);
+        } catch (RuntimeException e) {
+            // a failed or cancelled run stops the chunks that are still going
+            cancelled.set(true);
+            pending.cancel();
+            throw e;
+        }
+        downstream.end();
+    }
+
+    /**
+     * Returns a sink that submits every element it receives as its own task
+     * @param downstream Sink receiving the outputs
+     * @return Sink running the stages of this segment in parallel
+     */
+    public Sink<IN> asSink(Sink<OUT> downstream) {
+        return new AsyncSink<>(this::apply, executorService, inCompletionOrder, maxInFlight, downstream);
+    }
+
+    /**
+     * Pushes a chunk through the fused stages of the run
+     * @param chunk Elements of the chunk
+     * @param cancelled Flag raised once downstream does not need any more output
+     * @return Outputs of the chunk in encounter order
+     */
+    private List<OUT> apply(Spliterator<IN> chunk, AtomicBoolean cancelled) {
+        List<OUT> output = new ArrayList<>();
+        Sink<IN> sink = chain(new CollectionSink<>(output));
+        sink.begin(chunk.getExactSizeIfKnown());
+        do {
+            if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        } while (chunk.tryAdvance(sink));
+        sink.end();
+        return output;
+    }
+
+    private List<OUT> apply(IN item) {
+        List<OUT> output = new ArrayList<>();
+        Sink<IN> sink = chain(new CollectionSink<>(output));
+        sink.begin(1);
+        sink.accept(item);
+        sink.end();
+        return output;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Sink<IN> chain(Sink<OUT> downstream) {
+        Sink<?> sink = downstream;
+        for (int i = transformPipelines.size() - 1; i >= 0; i--) {
+            sink = transformPipelines.get(i).wrap(sink);
+        }
+        return (Sink<IN>) sink;
+    }
+
+    /**
+     * Returns the next chunk in encounter order, splitting the pending spliterators until they are small enough
+     */
+    private Spliterator<IN> nextChunk(Deque<Spliterator<IN>> splits, long chunkSize) {
+        while (!splits.isEmpty()) {
+            Spliterator<IN> split = splits.pop();
+            Spliterator<IN> prefix;
+            if (split.estimateSize() > chunkSize && (prefix = split.trySplit()) != null) {
+                splits.push(split);
+                splits.push(prefix);
+            } else {
+                return split;
+            }
+        }
+        return null;
+    }
+
+    private void drain(ReorderBuffer<OUT> pending, Sink<OUT> downstream, AtomicBoolean cancelled, int maxInFlight) {
+        pending.drain(downstream, maxInFlight);
+        if (downstream.cancellationRequested()) {
+            cancelled.set(true);
+            pending.cancel();
+        }
+    }
+
+    private long chunkSize(long size) {
+        if (size == Long.MAX_VALUE) {
+            return DEFAULT_CHUNK_SIZE;
+        }
+        long chunks = (long) parallelism(executorService) * CHUNKS_PER_THREAD;
+        return Math.min(MAX_CHUNK_SIZE, Math.max(1, (size + chunks - 1) / chunks));
+    }
+
+    /**
+     * Returns the number of tasks the executor runs at the same time
+     * @param executorService Executor to inspect
+     * @return Parallelism of the executor, the number of available processors if it cannot be told
+     */
+    static int parallelism(ExecutorService executorService) {
+        ExecutionBackend backend = ExecutionBackend.of(executorService);
+        if (backend != null) {
+            return backend.parallelism();
+        }
+        if (executorService instanceof ForkJoinPool pool) {
+            return pool.getParallelism();
+        }
+        if (executorService instanceof ThreadPoolExecutor pool && pool.getCorePoolSize() > 0) {
+            return pool.getCorePoolSize();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.streams;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.function.Function;
+
+/**
+ * A pipeline built and optimized once and then run over any number of sources.
+ * <p>
+ * A {@link Stream} plans its stages again for every terminal operation. A pipeline applies the shape to a template
+ * stream once, plans the stages for the collector once and keeps the result, so every run only creates the sinks that
+ * hold its own state (counters, buffers, containers) and reads the source. Runs share nothing else, which makes
+ * {@link #apply} safe to call from many threads at the same time, including for parallel pipelines.
+ * <p>
+ * The shape may use any operation that reads the stream it is given: filter, map, sorted, distinct, batch, parallel and
+ * so on, and join, which reads its build side once per run. Operations that replace the source (concat, zip,
+ * mergeSorted, limit(0)) are rejected.
+ * <p>
+ * Example:
+ * <pre>
+ * Pipeline<Order, Map<String, Long>> paidPerCustomer = Pipeline.of(
+ *     orders -> orders.filter(Order::isPaid).map(Order::customerId),
+ *     Collectors.groupingBy(id -> id, Collectors.counting()));
+ *
+ * Map<String, Long> today = paidPerCustomer.apply(todaysOrders); // Called concurrently by every request thread
+ * </pre>
+ *
+ * @param <T> The type of the source elements
+ * @param <R> The type of the result
+ */
+public final class Pipeline<T, R> {
+
+    private final Function<Spliterator<?>, R> compiled;
+
+    private Pipeline(Function<Spliterator<?>, R> compiled) {
+        this.compiled = compiled;
+    }
+
+    /**
+     * Builds a pipeline from the operations applied to a template stream and the collector reducing their output
+     * <p>
+     * Example:
+     * <pre>
+     * Pipeline<String, List<Integer>> lengths = Pipeline.of(words -> words.map(String::length), Collectors.toList());
+     * lengths.apply(Arrays.asList("a", "bb")); // Returns [1, 2]
+     * </pre>
+     *
+     * @param shape Applies the operations to the template stream, called once
+     * @param collector Collector to reduce the elements with on every run
+     * @return Compiled pipeline
+     * @throws IllegalArgumentException if shape or collector is null, or the shape replaces the source
+     */
+    public static <T, U, R> Pipeline<T, R> of(Function<Stream<T>, Stream<U>> shape, Collector<U, ?, R> collector) {
+        if (shape == null) {
+            throw new IllegalArgumentException("Shape cannot be null");
+        }
+        if (collector == null) {
+            throw new IllegalArgumentException("Collector cannot be null");
+        }
+        Stream<U> shaped = shape.apply(Stream.template());
+        if (shaped == null) {
+            throw new IllegalArgumentException("Shape cannot return null");
+        }
+        return new Pipeline<>(shaped.compile(collector));
+    }
+
+    /**
+     * Runs the pipeline over the current contents of the collection
+     * @param source Source collection, not copied
+     * @return Result of the collector
+     * @throws IllegalArgumentException if source is null
+     */
+    public R apply(Collection<T> source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source cannot be null");
+        }
+        return compiled.apply(source.spliterator());
+    }
+
+    /**
+     * Runs the pipeline over a lazy source, reading its elements on demand. Parallel pipelines split the source if it
+     * supports splitting, and sources that are {@link AutoCloseable} are closed once the run is done.
+     * @param source Source elements, consumed by the run
+     * @return Result of the collector
+     * @throws IllegalArgumentException if source is null
+     */
+    public R apply(Spliterator<T> source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source cannot be null");
+        }
+        return compiled.apply(source);
+    }
+}
@@ -0,0 +1,227 @@
+package org.example.streams;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects per-stage measurements of the terminal operations of an instrumented stream, see
+ * {@link Stream#instrument(PipelineMetrics)}.
+ * <p>
+ * Every terminal operation measures the stages of its optimized plan, so the report shows the stages that actually
+ * ran, and replaces the measurements of the previous run once it finishes. Listeners are called after every run,
+ * which is where measurements are handed to a metrics library, and {@link #registerMBean()} exposes the last run
+ * over JMX.
+ * <p>
+ * Streams that are not instrumented run their stages as they are, so instrumentation costs nothing unless it is
+ * switched on.
+ * <p>
+ * Example:
+ * <pre>
+ * PipelineMetrics metrics = new PipelineMetrics("orders", true);
+ * new Stream<>(orders)
+ *     .instrument(metrics)
+ *     .filter(Order::isPaid)
+ *     .map(this::enrich)
+ *     .toList();
+ * System.out.print(metrics.report()); // One line per stage with counts, times and allocations
+ * </pre>
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    private final String name;
+    private final boolean threadStats;
+    private final List<Consumer<PipelineMetrics>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong runs = new AtomicLong();
+    private volatile List<StageMetrics> stages = List.of();
+    private ObjectName objectName;
+
+    /**
+     * Creates metrics measuring element counts, wall time and queue depth
+     * @param name Name of the pipeline, used in the report and the JMX name
+     */
+    public PipelineMetrics(String name) {
+        this(name, false);
+    }
+
+    /**
+     * @param name Name of the pipeline, used in the report and the JMX name
+     * @param threadStats True to also measure CPU time and allocated bytes of every stage through
+     *                    {@link java.lang.management.ThreadMXBean}, which costs a few more calls per element
+     */
+    public PipelineMetrics(String name, boolean threadStats) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        this.name = name;
+        this.threadStats = threadStats;
+    }
+
+    /**
+     * Adds a listener called with these metrics after every instrumented terminal operation
+     * @param listener Listener, called on the thread that ran the terminal operation
+     * @return These metrics
+     */
+    public PipelineMetrics addListener(Consumer<PipelineMetrics> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Returns the measurements of the stages of the last run, empty before the first run finished
+     */
+    public List<StageMetrics> stages() {
+        return stages;
+    }
+
+    /**
+     * Returns a report of the last run with one line per stage
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Pipeline ").append(name).append(" (run ").append(runs.get()).append("):\n");
+        for (StageMetrics stage : stages) {
+            report.append("  ").append(stage).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * {@code org.example.streams:type=PipelineMetrics,name=<name>}
+     * @return These metrics
+     */
+    public synchronized PipelineMetrics registerMBean() {
+        try {
+            ObjectName objectName = ObjectName.getInstance("org.example.streams:type=PipelineMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return this;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Pipeline metrics " + name + " are already registered", e);
+        } catch (JMException e) {
+            throw new RuntimeException("Error while registering pipeline metrics", e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if they were registered
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // already removed by someone else
+        } catch (JMException e) {
+            throw new RuntimeException("Error while unregistering pipeline metrics", e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Replaces every stage of a plan with a stage measuring it
+     * @param plan Stages a terminal operation is about to run
+     * @param run Receives the measurements of the stages, one per stage
+     * @return Instrumented stages
+     */
+    List<TransformPipeline<?, ?>> instrument(List<TransformPipeline<?, ?>> plan, List<StageMetrics> run) {
+        List<TransformPipeline<?, ?>> instrumented = new ArrayList<>(plan.size());
+        for (TransformPipeline<?, ?> stage : plan) {
+            StageMetrics metrics = new StageMetrics(stage.toString(), stage.executorService(), threadStats);
+            run.add(metrics);
+            instrumented.add(stage.instrumented(metrics));
+        }
+        return instrumented;
+    }
+
+    /**
+     * Publishes the measurements of a finished run and notifies the listeners
+     * @param run Measurements of the stages of the run
+     */
+    void finish(List<StageMetrics> run) {
+        stages = List.copyOf(run);
+        runs.incrementAndGet();
+        for (Consumer<PipelineMetrics> listener : listeners) {
+            listener.accept(this);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.get();
+    }
+
+    @Override
+    public String[] getStages() {
+        List<StageMetrics> current = stages;
+        String[] names = new String[current.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = current.get(i).stage();
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getElementsIn() {
+        return values(StageMetrics::elementsIn);
+    }
+
+    @Override
+    public long[] getElementsOut() {
+        return values(StageMetrics::elementsOut);
+    }
+
+    @Override
+    public long[] getWallNanos() {
+        return values(StageMetrics::wallNanos);
+    }
+
+    @Override
+    public long[] getCpuNanos() {
+        return values(StageMetrics::cpuNanos);
+    }
+
+    @Override
+    public long[] getAllocatedBytes() {
+        return values(StageMetrics::allocatedBytes);
+    }
+
+    @Override
+    public long[] getMaxQueueDepth() {
+        return values(StageMetrics::maxQueueDepth);
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    private long[] values(ToLongFunction<StageMetrics> value) {
+        List<StageMetrics> current = stages;
+        long[] values = new long[current.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = value.applyAsLong(current.get(i));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.streams;
+
+/**
+ * Management interface of {@link PipelineMetrics}, describing the last instrumented run of a pipeline.
+ * Every array holds one entry per stage, in the order of {@link #getStages()}.
+ */
+public interface PipelineMetricsMXBean {
+
+    String getName();
+
+    /** Number of terminal operations that finished since the metrics were created */
+    long getRuns();
+
+    String[] getStages();
+
+    long[] getElementsIn();
+
+    long[] getElementsOut();
+
+    long[] getWallNanos();
+
+    long[] getCpuNanos();
+
+    long[] getAllocatedBytes();
+
+    long[] getMaxQueueDepth();
+
+    /** Human readable report of the last run */
+    String getReport();
+}
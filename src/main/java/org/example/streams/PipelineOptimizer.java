@@ -0,0 +1,209 @@
+package org.example.streams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Rewrites the stages of a pipeline into an equivalent chain that is cheaper to run, right before a terminal
+ * operation executes it. The stages of the stream itself are left untouched.
+ * <p>
+ * Rewrites, applied in this order:
+ * <ul>
+ *     <li>skip(0) stages are removed, adjacent skips are added up and adjacent limits keep the smaller count</li>
+ *     <li>limit and last move in front of maps that do not run chunk by chunk, so only the kept elements are mapped</li>
+ *     <li>a sort directly followed by limit(k) or last(k) becomes a bounded heap of k elements</li>
+ *     <li>distinct is dropped before a terminal collecting into a set, a sort before a terminal ignoring order</li>
+ *     <li>adjacent maps, filters and peeks on the same executor are merged into one stage</li>
+ * </ul>
+ * No rewrite moves a stage to another executor, every stage runs on the executor it was given.
+ * <p>
+ * Example:
+ * <pre>
+ * // sorted(cmp).map(f).limit(3) runs as TOP_K(3), MAP
+ * List<TransformPipeline<?, ?>> plan = PipelineOptimizer.optimize(stages, TerminalType.ORDERED, null);
+ * </pre>
+ */
+public final class PipelineOptimizer {
+
+    /** Stages that neither look at the order of the elements nor at how often an element occurs */
+    private static final Set<StageType> STATELESS = EnumSet.of(StageType.FILTER, StageType.MAP, StageType.FLAT_MAP, StageType.MAP_MULTI, StageType.JOIN);
+
+    /** Stages that handle every element on its own, so reordering their input only reorders their output */
+    private static final Set<StageType> REORDERABLE = EnumSet.of(StageType.FILTER, StageType.MAP, StageType.FLAT_MAP, StageType.MAP_MULTI, StageType.JOIN, StageType.PEEK);
+
+    private PipelineOptimizer() {
+    }
+
+    /**
+     * Returns the optimized plan for the stages
+     * @param transformPipelines Stages as built by the stream
+     * @param terminalType What the terminal operation depends on
+     * @param executorService Executor of the stream, null for a sequential stream
+     * @return New list with the stages to run
+     */
+    public static List<TransformPipeline<?, ?>> optimize(List<TransformPipeline<?, ?>> transformPipelines,
+                                                         TerminalType terminalType, ExecutorService executorService) {
+        if (transformPipelines == null) {
+            throw new IllegalArgumentException("TransformPipelines cannot be null");
+        }
+        if (terminalType == null) {
+            throw new IllegalArgumentException("TerminalType cannot be null");
+        }
+        List<TransformPipeline<?, ?>> plan = new ArrayList<>(transformPipelines);
+        mergeCounts(plan);
+        pushLimitsThroughMaps(plan);
+        fuseTopK(plan, executorService);
+        dropUnusedStages(plan, terminalType);
+        mergeStateless(plan);
+        return plan;
+    }
+
+    private static void mergeCounts(List<TransformPipeline<?, ?>> plan) {
+        for (int i = 0; i < plan.size(); i++) {
+            TransformPipeline<?, ?> stage = plan.get(i);
+            StageType previous = i > 0 ? plan.get(i - 1).type() : null;
+            if ((stage.type() == StageType.SKIP || stage.type() == StageType.SKIP_LAST) && count(stage) == 0) {
+                plan.remove(i--);
+            } else if (stage.type() == StageType.SKIP && previous == StageType.SKIP) {
+                long skipped = (long) count(plan.get(i - 1)) + count(stage);
+                if (skipped <= Integer.MAX_VALUE) {
+                    plan.set(i - 1, TransformPipeline.skip((int) skipped));
+                    plan.remove(i--);
+                }
+            } else if (stage.type() == StageType.LIMIT && previous == StageType.LIMIT) {
+                plan.set(i - 1, TransformPipeline.limit(Math.min(count(plan.get(i - 1)), count(stage))));
+                plan.remove(i--);
+            }
+        }
+    }
+
+    private static void pushLimitsThroughMaps(List<TransformPipeline<?, ?>> plan) {
+        for (int i = 1; i < plan.size(); i++) {
+            StageType type = plan.get(i).type();
+            // a map in the chunked run would lose its chunks behind the sequential limit, which already cancels the chunks
+            if ((type == StageType.LIMIT || type == StageType.LAST) && plan.get(i - 1).type() == StageType.MAP
+                    && !inHeadRun(plan, i - 1)) {
+                Collections.swap(plan, i - 1, i);
+                i = Math.max(0, i - 2);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void fuseTopK(List<TransformPipeline<?, ?>> plan, ExecutorService executorService) {
+        for (int i = 0; i + 1 < plan.size(); i++) {
+            StageType type = plan.get(i).type();
+            StageType next = plan.get(i + 1).type();
+            if ((type != StageType.SORTED && type != StageType.SORTED_BY) || (next != StageType.LIMIT && next != StageType.LAST)) {
+                continue;
+            }
+            Comparator<Object> comparator = (Comparator<Object>) plan.get(i).argument();
+            int k = count(plan.get(i + 1));
+            boolean last = next == StageType.LAST;
+            ExecutorService chunkExecutor = i == 0 ? executorService
+                    : inHeadRun(plan, i - 1) ? plan.get(0).executorService() : null;
+            plan.remove(i + 1);
+            plan.set(i, TransformPipeline.topK(comparator, k, last, null));
+            if (chunkExecutor != null) {
+                // every chunk keeps its own k elements in parallel, the sequential stage picks the overall k from those
+                plan.add(i++, TransformPipeline.topK(comparator, k, last, chunkExecutor));
+            }
+        }
+    }
+
+    private static void dropUnusedStages(List<TransformPipeline<?, ?>> plan, TerminalType terminalType) {
+        if (terminalType.ignoresDuplicates()) {
+            Set<StageType> allowed = EnumSet.of(StageType.DISTINCT, StageType.FILTER, StageType.MAP, StageType.FLAT_MAP,
+                    StageType.MAP_MULTI);
+            for (int i = plan.size() - 1; i >= 0; i--) {
+                if (plan.get(i).type() == StageType.DISTINCT && onlyFollowedBy(plan, i, allowed)) {
+                    plan.remove(i);
+                }
+            }
+        }
+        if (terminalType.ignoresOrder()) {
+            for (int i = plan.size() - 1; i >= 0; i--) {
+                StageType type = plan.get(i).type();
+                if ((type == StageType.SORTED || type == StageType.SORTED_BY) && onlyFollowedBy(plan, i, STATELESS)) {
+                    plan.remove(i);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void mergeStateless(List<TransformPipeline<?, ?>> plan) {
+        for (int i = 1; i < plan.size(); i++) {
+            TransformPipeline<?, ?> previous = plan.get(i - 1);
+            TransformPipeline<?, ?> stage = plan.get(i);
+            if (previous.type() != stage.type() || previous.executorService() != stage.executorService()) {
+                continue;
+            }
+            TransformPipeline<?, ?> merged = switch (stage.type()) {
+                case MAP -> TransformPipeline.map(((Function<Object, Object>) previous.argument())
+                        .andThen((Function<Object, Object>) stage.argument()), stage.executorService());
+                case FILTER -> TransformPipeline.filter(((Predicate<Object>) previous.argument())
+                        .and((Predicate<Object>) stage.argument()), stage.executorService());
+                case PEEK -> TransformPipeline.peek(((Consumer<Object>) previous.argument())
+                        .andThen((Consumer<Object>) stage.argument()), stage.executorService());
+                default -> null;
+            };
+            if (merged != null) {
+                plan.set(i - 1, merged);
+                plan.remove(i--);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the stage at the index belongs to the parallel run reading straight from the source
+     */
+    private static boolean inHeadRun(List<TransformPipeline<?, ?>> plan, int index) {
+        ExecutorService executorService = plan.get(0).executorService();
+        if (executorService == null) {
+            return false;
+        }
+        for (int i = 1; i <= index; i++) {
+            if (plan.get(i).executorService() != executorService) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the stages from the first parallel stage on produce the same elements whatever order their input
+     * arrives in, so a terminal that ignores order may consume parallel results in the order they complete
+     * @param plan Optimized stages
+     * @return True if no stage from the first parallel stage on depends on the encounter order
+     */
+    static boolean allowsCompletionOrder(List<TransformPipeline<?, ?>> plan) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.get(i).isParallel()) {
+                return REORDERABLE.contains(plan.get(i).type()) && onlyFollowedBy(plan, i, REORDERABLE);
+            }
+        }
+        return true;
+    }
+
+    private static boolean onlyFollowedBy(List<TransformPipeline<?, ?>> plan, int index, Set<StageType> allowed) {
+        for (int i = index + 1; i < plan.size(); i++) {
+            if (!allowed.contains(plan.get(i).type())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int count(TransformPipeline<?, ?> stage) {
+        return (Integer) stage.argument();
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.streams;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Spliterator that pulls the output of a pipeline on demand.
+ * <p>
+ * Every advance pushes source elements through the fused stages one at a time until a stage emits an element,
+ * so reading the first element only costs what it takes to produce it. Stages that hold elements back, like
+ * sorted, emit them once the source is exhausted. All stages run on the calling thread.
+ * <p>
+ * The source is closed once it is exhausted, or by {@link #close()} when the reader stops early.
+ *
+ * @param <OUT> The type of elements leaving the pipeline
+ */
+public class PipelineSpliterator<OUT> implements Spliterator<OUT>, AutoCloseable {
+
+    private final Supplier<? extends Spliterator<?>> sourceSupplier;
+    private final List<TransformPipeline<?, ?>> transformPipelines;
+
+    /** Elements emitted by the last stage that have not been handed out yet */
+    private final Deque<OUT> buffer = new ArrayDeque<>();
+    private Spliterator<?> source;
+    private Sink<Object> sink;
+    private boolean finished;
+
+    /**
+     * @param sourceSupplier Supplies the source spliterator, called on the first advance
+     * @param transformPipelines Stages to push the source elements through
+     */
+    public PipelineSpliterator(Supplier<? extends Spliterator<?>> sourceSupplier, List<TransformPipeline<?, ?>> transformPipelines) {
+        this.sourceSupplier = sourceSupplier;
+        this.transformPipelines = transformPipelines;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super OUT> action) {
+        if (buffer.isEmpty() && !fill()) {
+            return false;
+        }
+        action.accept(buffer.poll());
+        return true;
+    }
+
+    @Override
+    public Spliterator<OUT> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return finished ? buffer.size() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED;
+    }
+
+    /**
+     * Releases the resources of the source if it has been opened and is not exhausted yet
+     */
+    @Override
+    public void close() {
+        if (source != null && !finished) {
+            finished = true;
+            ReducePipeline.close(source);
+        }
+    }
+
+    /**
+     * Advances the source until the stages emit at least one element or the source is exhausted
+     * @return false if no element is left
+     */
+    @SuppressWarnings("unchecked")
+    private boolean fill() {
+        if (sink == null) {
+            source = sourceSupplier.get();
+            List<TransformPipeline<?, ?>> stages = TransformPipeline.forRun(transformPipelines);
+            Sink<?> chain = (Sink<OUT>) buffer::add;
+            for (int i = stages.size() - 1; i >= 0; i--) {
+                chain = stages.get(i).wrap(chain);
+            }
+            sink = (Sink<Object>) chain;
+            sink.begin(source.getExactSizeIfKnown());
+        }
+        while (buffer.isEmpty() && !finished) {
+            if (sink.cancellationRequested() || !source.tryAdvance(sink)) {
+                finished = true;
+                sink.end();
+                ReducePipeline.close(source);
+            }
+        }
+        return !buffer.isEmpty();
+    }
+}
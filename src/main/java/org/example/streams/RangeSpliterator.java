@@ -0,0 +1,69 @@
+package org.example.streams;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Spliterator over a range of long indexes that creates each element only when it is pulled.
+ * <p>
+ * Splitting halves the remaining range, so parallel streams over a range never materialize it.
+ *
+ * @param <T> The type of elements produced for each index
+ */
+public class RangeSpliterator<T> implements Spliterator<T> {
+
+    private long from;
+    private final long to;
+    private final LongFunction<T> element;
+
+    /**
+     * @param from First index of the range
+     * @param to Upper bound of the range, not included
+     * @param element Creates the element for an index
+     */
+    public RangeSpliterator(long from, long to, LongFunction<T> element) {
+        this.from = from;
+        this.to = Math.max(from, to);
+        this.element = element;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (from >= to) {
+            return false;
+        }
+        action.accept(element.apply(from++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        long end = to;
+        for (long i = from; i < end; i++) {
+            action.accept(element.apply(i));
+        }
+        from = end;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        long mid = from + (to - from) / 2;
+        if (mid == from) {
+            return null;
+        }
+        Spliterator<T> prefix = new RangeSpliterator<>(from, mid, element);
+        from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+}
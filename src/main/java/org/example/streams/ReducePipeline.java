@@ -1,19 +1,123 @@
 package org.example.streams;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
+/**
+ * Runs the stages of a pipeline over a source into a terminal sink
+ * <p>
+ * Interrupting the thread running the pipeline cancels it: the running parallel tasks are cancelled and
+ * a {@link CancellationException} is thrown instead of a result.
+ *
+ * @param transformPipelines Stages to run
+ * @param terminalSupplier Creates the terminal sink of the run
+ * @param inCompletionOrder True if the terminal does not depend on the encounter order, so parallel stages hand
+ *                          their outputs downstream in the order they complete
+ * @param maxInFlight Tasks each run of parallel stages may have in flight, 0 for a few tasks per worker thread
+ */
 public record ReducePipeline<IN, OUT>(List<TransformPipeline<?, ?>> transformPipelines,
-                                      Function<Collection<IN>, OUT> reduceFunction, Stream<IN> stream) {
+                                      Supplier<TerminalSink<IN, OUT>> terminalSupplier, boolean inCompletionOrder,
+                                      int maxInFlight) {
 
     @SuppressWarnings("unchecked")
-    public OUT reduce(Collection<?> collection) {
-        for (TransformPipeline<?, ?> pipeline : transformPipelines) {
-            collection = pipeline.apply(collection);
+    public OUT reduce(Spliterator<?> source) {
+        List<TransformPipeline<?, ?>> stages;
+        try {
+            stages = TransformPipeline.forRun(transformPipelines);
+        } catch (RuntimeException e) {
+            close(source);
+            throw e;
         }
-        OUT result = reduceFunction.apply((Collection<IN>) collection);
-        stream.close();
-        return result;
+        if (stages != transformPipelines) {
+            return new ReducePipeline<IN, OUT>(stages, terminalSupplier, inCompletionOrder, maxInFlight).reduce(source);
+        }
+        TerminalSink<IN, OUT> terminal = terminalSupplier.get();
+        int head = parallelRunEnd(0);
+        Sink<Object> sink = (Sink<Object>) chain(head, terminal);
+        try {
+            if (head > 0) {
+                ExecutorService executorService = transformPipelines.get(0).executorService();
+                new ParallelSegment<>(transformPipelines.subList(0, head), executorService, inCompletionOrder, maxInFlight)
+                        .run((Spliterator<Object>) source, sink);
+            } else {
+                sink.begin(source.getExactSizeIfKnown());
+                do {
+                    if (sink.cancellationRequested()) {
+                        break;
+                    }
+                    checkInterrupted();
+                } while (source.tryAdvance(sink));
+                sink.end();
+            }
+        } finally {
+            close(source);
+        }
+        return terminal.result();
+    }
+
+    /**
+     * Cancels the pipeline once the thread running it has been interrupted
+     * @throws CancellationException if the current thread is interrupted
+     */
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Stream was cancelled");
+        }
+    }
+
+    /**
+     * Releases the resources of sources such as files, which stay open until the terminal operation is done
+     */
+    static void close(Spliterator<?> source) {
+        if (source instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new RuntimeException("Error while closing the source", e);
+            }
+        }
+    }
+
+    /**
+     * Composes the stages from the given index onwards into a sink chain ending in the terminal sink,
+     * running each run of parallel stages one element per task
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Sink<?> chain(int from, Sink<?> terminal) {
+        Sink<?> sink = terminal;
+        int end = transformPipelines.size();
+        while (end > from) {
+            TransformPipeline<?, ?> last = transformPipelines.get(end - 1);
+            if (!last.isParallel()) {
+                sink = last.wrap(sink);
+                end--;
+                continue;
+            }
+            int start = end - 1;
+            while (start > from && transformPipelines.get(start - 1).executorService() == last.executorService()) {
+                start--;
+            }
+            sink = new ParallelSegment(transformPipelines.subList(start, end), last.executorService(), inCompletionOrder, maxInFlight).asSink(sink);
+            end = start;
+        }
+        return sink;
+    }
+
+    /**
+     * Returns the end of the run of parallel stages sharing one executor that starts at the given index
+     */
+    private int parallelRunEnd(int start) {
+        if (start >= transformPipelines.size() || !transformPipelines.get(start).isParallel()) {
+            return start;
+        }
+        ExecutorService executorService = transformPipelines.get(start).executorService();
+        int end = start + 1;
+        while (end < transformPipelines.size() && transformPipelines.get(end).executorService() == executorService) {
+            end++;
+        }
+        return end;
     }
-}
\ No newline at end of file
+}
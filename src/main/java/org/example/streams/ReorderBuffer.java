@@ -0,0 +1,145 @@
+package org.example.streams;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Collects the outputs of parallel tasks as they complete and hands them to a sink on the submitting thread.
+ * <p>
+ * Tasks report to a completion queue, so the submitting thread wakes up for whichever task finishes first instead
+ * of blocking on the oldest one. In encounter order, outputs that complete early wait in the buffer until every
+ * older task has been handed downstream. In completion order, outputs are handed downstream right away.
+ * <p>
+ * Callers bound their memory by draining down to a window of in-flight tasks before submitting the next one:
+ * a task stays in flight until its outputs have been handed downstream, including while it waits for older tasks.
+ *
+ * @param <OUT> The type of elements produced by the tasks
+ */
+public class ReorderBuffer<OUT> {
+
+    private record Completion<OUT>(long index, List<OUT> output, Throwable failure) {
+    }
+
+    private final boolean inCompletionOrder;
+    private final BlockingQueue<Completion<OUT>> completed = new LinkedBlockingQueue<>();
+    /** Tasks that have not been received from the completion queue yet */
+    private final Map<Long, Future<?>> running = new HashMap<>();
+    /** Outputs that completed ahead of an older task, by task index */
+    private final Map<Long, List<OUT>> waiting = new HashMap<>();
+    private long submitted;
+    private long received;
+    /** Index of the next task to hand downstream in encounter order */
+    private long next;
+
+    /**
+     * @param inCompletionOrder True to hand outputs downstream as soon as their task completes
+     */
+    public ReorderBuffer(boolean inCompletionOrder) {
+        this.inCompletionOrder = inCompletionOrder;
+    }
+
+    /**
+     * Submits a task to the executor
+     * @param executorService Executor to run the task on
+     * @param task Produces the outputs of the task
+     */
+    public void submit(ExecutorService executorService, Callable<List<OUT>> task) {
+        long index = submitted++;
+        Future<?> future = executorService.submit(() -> {
+            try {
+                completed.add(new Completion<>(index, task.call(), null));
+            } catch (Throwable e) {
+                completed.add(new Completion<>(index, null, e));
+            }
+        });
+        running.put(index, future);
+    }
+
+    /**
+     * Adds the outputs of a task that already ran on the calling thread
+     * @param output Outputs of the task
+     */
+    public void complete(List<OUT> output) {
+        completed.add(new Completion<>(submitted++, output, null));
+    }
+
+    /**
+     * Returns the number of submitted tasks whose outputs have not been handed downstream yet
+     */
+    public int inFlight() {
+        return (int) (submitted - (inCompletionOrder ? received : next));
+    }
+
+    /**
+     * Hands the outputs of completed tasks to the sink until it requests cancellation, waiting for running tasks
+     * while more than the given number of tasks are in flight
+     * @param downstream Sink receiving the outputs
+     * @param maxInFlight Tasks that may stay in flight, 0 to wait for every submitted task
+     */
+    public void drain(Sink<OUT> downstream, int maxInFlight) {
+        while (received < submitted && !downstream.cancellationRequested()) {
+            Completion<OUT> completion = inFlight() > maxInFlight ? take() : completed.poll();
+            if (completion == null) {
+                return;
+            }
+            received++;
+            running.remove(completion.index());
+            if (completion.failure() != null) {
+                cancel();
+                throw new RuntimeException("Error while getting the result from future", completion.failure());
+            }
+            if (inCompletionOrder) {
+                emit(completion.output(), downstream);
+                continue;
+            }
+            waiting.put(completion.index(), completion.output());
+            List<OUT> output;
+            while ((output = waiting.remove(next)) != null) {
+                next++;
+                emit(output, downstream);
+            }
+        }
+    }
+
+    /**
+     * Cancels the tasks that are still running and drops the outputs that have not been handed downstream
+     */
+    public void cancel() {
+        for (Future<?> future : running.values()) {
+            future.cancel(true);
+        }
+        running.clear();
+        waiting.clear();
+        completed.clear();
+        received = submitted;
+        next = submitted;
+    }
+
+    private Completion<OUT> take() {
+        try {
+            return completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            CancellationException cancellation = new CancellationException("Stream was cancelled");
+            cancellation.initCause(e);
+            throw cancellation;
+        }
+    }
+
+    private void emit(List<OUT> output, Sink<OUT> downstream) {
+        for (OUT item : output) {
+            if (downstream.cancellationRequested()) {
+                return;
+            }
+            downstream.accept(item);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.streams;
+
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * A stage of a fused stream pipeline that receives elements one at a time.
+ * <p>
+ * Every intermediate operation wraps the sink of the operation that follows it, so a chain of
+ * filter/map/peek stages runs as a single pass over the source without building intermediate collections.
+ *
+ * @param <T> The type of elements accepted by the sink
+ */
+public interface Sink<T> extends Consumer<T> {
+
+    /**
+     * Called once before the first element is pushed
+     * @param size Exact number of elements that will be pushed, or -1 if unknown
+     */
+    default void begin(long size) {
+    }
+
+    /**
+     * Receives the next element of the stream
+     * @param item Element to process
+     */
+    @Override
+    void accept(T item);
+
+    /**
+     * Called once after the last element has been pushed
+     */
+    default void end() {
+    }
+
+    /**
+     * Tells upstream stages that this sink does not want any more elements, so the source
+     * can stop early instead of pushing the rest of its elements
+     * @return true if no further elements should be pushed
+     */
+    default boolean cancellationRequested() {
+        return false;
+    }
+
+    /**
+     * Sink of primitive int values, used by {@link IntStream} so values are never boxed
+     */
+    interface OfInt extends Sink<Integer>, IntConsumer {
+
+        @Override
+        void accept(int value);
+
+        @Override
+        default void accept(Integer value) {
+            accept(value.intValue());
+        }
+    }
+
+    /**
+     * Sink of primitive long values, used by {@link LongStream} so values are never boxed
+     */
+    interface OfLong extends Sink<Long>, LongConsumer {
+
+        @Override
+        void accept(long value);
+
+        @Override
+        default void accept(Long value) {
+            accept(value.longValue());
+        }
+    }
+
+    /**
+     * Sink of primitive double values, used by {@link DoubleStream} so values are never boxed
+     */
+    interface OfDouble extends Sink<Double>, DoubleConsumer {
+
+        @Override
+        void accept(double value);
+
+        @Override
+        default void accept(Double value) {
+            accept(value.doubleValue());
+        }
+    }
+}
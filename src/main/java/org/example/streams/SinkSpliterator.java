@@ -0,0 +1,86 @@
+package org.example.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Spliterator that pulls the output of a fused chain of sinks on demand, used to hand the values of a primitive
+ * stream to a {@link Stream} without running the primitive stages up front.
+ * <p>
+ * Every advance pushes source values through the sinks one at a time until the chain emits an element, so a
+ * downstream limit or find stops the primitive source as well. Primitive sinks are also primitive consumers, so the
+ * source pushes its values into them without boxing.
+ *
+ * @param <OUT> The type of elements leaving the chain
+ */
+class SinkSpliterator<OUT> implements Spliterator<OUT> {
+
+    private final Supplier<? extends Spliterator<?>> sourceSupplier;
+    private final Function<Consumer<OUT>, Sink<?>> chainFactory;
+
+    /** Elements emitted by the chain that have not been handed out yet, from index next on */
+    private final List<OUT> buffer = new ArrayList<>();
+    private int next;
+    private Spliterator<?> source;
+    private Sink<Object> sink;
+    private boolean finished;
+
+    /**
+     * @param sourceSupplier Supplies the source spliterator, called on the first advance
+     * @param chainFactory Wraps the consumer of the emitted elements with the sinks of all stages
+     */
+    SinkSpliterator(Supplier<? extends Spliterator<?>> sourceSupplier, Function<Consumer<OUT>, Sink<?>> chainFactory) {
+        this.sourceSupplier = sourceSupplier;
+        this.chainFactory = chainFactory;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super OUT> action) {
+        if (next == buffer.size() && !fill()) {
+            return false;
+        }
+        action.accept(buffer.get(next++));
+        return true;
+    }
+
+    @Override
+    public Spliterator<OUT> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return finished ? buffer.size() - next : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED;
+    }
+
+    /**
+     * Advances the source until the chain emits at least one element or the source is exhausted
+     * @return false if no element is left
+     */
+    @SuppressWarnings("unchecked")
+    private boolean fill() {
+        buffer.clear();
+        next = 0;
+        if (sink == null) {
+            source = sourceSupplier.get();
+            sink = (Sink<Object>) chainFactory.apply(buffer::add);
+            sink.begin(source.getExactSizeIfKnown());
+        }
+        while (buffer.isEmpty() && !finished) {
+            if (sink.cancellationRequested() || !source.tryAdvance(sink)) {
+                finished = true;
+                sink.end();
+            }
+        }
+        return !buffer.isEmpty();
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.streams;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Settings of a sort or distinct that spills to disk once its input does not fit in memory, see
+ * {@link Stream#sorted(Comparator, SpillOptions)} and {@link Stream#distinct(SpillOptions)}.
+ * <p>
+ * The budget is counted in elements, which is what the stage holds on the heap at most while it reads its input.
+ * Once the budget is used up the buffered elements are sorted and written to a run file in the directory, and the
+ * runs are merged back when the input ends. Parallel streams sort and write runs on their executor while the next
+ * run is filled, splitting the budget between the runs in memory.
+ * <p>
+ * Example:
+ * <pre>
+ * SpillOptions<Order> spill = new SpillOptions<>(1_000_000, SpillSerializer.jackson(Order.class));
+ * new Stream<>(orders)
+ *     .sorted(Comparator.comparing(Order::createdAt), spill)
+ *     .forEach(writer::write); // Holds at most 1M orders on the heap
+ * </pre>
+ *
+ * @param maxInMemory Elements held in memory at most before they are spilled
+ * @param serializer Writes and reads the spilled elements
+ * @param directory Directory of the run files
+ * @param <T> The type of elements
+ */
+public record SpillOptions<T>(int maxInMemory, SpillSerializer<T> serializer, Path directory) {
+
+    public SpillOptions {
+        if (maxInMemory <= 0) {
+            throw new IllegalArgumentException("MaxInMemory must be positive");
+        }
+        if (serializer == null || directory == null) {
+            throw new IllegalArgumentException("Serializer and directory cannot be null");
+        }
+    }
+
+    /**
+     * Creates options writing the run files to the temporary directory of the JVM
+     * @param maxInMemory Elements held in memory at most before they are spilled
+     * @param serializer Writes and reads the spilled elements
+     */
+    public SpillOptions(int maxInMemory, SpillSerializer<T> serializer) {
+        this(maxInMemory, serializer, Path.of(System.getProperty("java.io.tmpdir")));
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.streams;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes elements to and reads them back from the run files of an external sort or distinct, see {@link SpillOptions}.
+ * <p>
+ * A serializer only has to read back what it wrote itself: every element read must be equal to the element written,
+ * and compare the same. The run files are private to one terminal operation and deleted once it is done.
+ * <p>
+ * Example:
+ * <pre>
+ * SpillSerializer<String> strings = new SpillSerializer<>() {
+ *     public void write(String item, DataOutput out) throws IOException {
+ *         out.writeUTF(item);
+ *     }
+ *
+ *     public String read(DataInput in) throws IOException {
+ *         return in.readUTF();
+ *     }
+ * };
+ * SpillSerializer<Order> orders = SpillSerializer.jackson(Order.class);
+ * </pre>
+ *
+ * @param <T> The type of elements
+ */
+public interface SpillSerializer<T> {
+
+    void write(T item, DataOutput out) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    /**
+     * Creates a serializer writing every element as length-prefixed JSON, with the modules found on the classpath
+     * registered, such as the one for {@code java.time}
+     * @param type Class of the elements
+     * @return Jackson serializer
+     */
+    static <T> SpillSerializer<T> jackson(Class<T> type) {
+        return jackson(new ObjectMapper().findAndRegisterModules(), type);
+    }
+
+    /**
+     * Creates a serializer writing every element as length-prefixed JSON with the given mapper
+     * @param mapper Mapper to write and read the elements with
+     * @param type Class of the elements
+     * @return Jackson serializer
+     */
+    static <T> SpillSerializer<T> jackson(ObjectMapper mapper, Class<T> type) {
+        if (mapper == null || type == null) {
+            throw new IllegalArgumentException("Mapper and type cannot be null");
+        }
+        JavaType javaType = mapper.constructType(type);
+        return new SpillSerializer<>() {
+            @Override
+            public void write(T item, DataOutput out) throws IOException {
+                byte[] json = mapper.writeValueAsBytes(item);
+                out.writeInt(json.length);
+                out.write(json);
+            }
+
+            @Override
+            public T read(DataInput in) throws IOException {
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                return mapper.readValue(json, javaType);
+            }
+        };
+    }
+}
@@ -0,0 +1,279 @@
+package org.example.streams;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Measurements of one stage of an instrumented pipeline, see {@link PipelineMetrics}.
+ * <p>
+ * Times are the stage's own share: the time spent in its sink minus the time spent in the stages after it. Each
+ * sink adds up its measurements locally and publishes them when it ends, so parallel chunks only touch the shared
+ * counters once per chunk. Queue depth is sampled for parallel stages whenever a chunk starts, as the number of
+ * tasks waiting in the executor behind it.
+ */
+public final class StageMetrics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String stage;
+    private final ExecutorService executorService;
+    private final boolean threadStats;
+    private final LongAdder elementsIn = new LongAdder();
+    private final LongAdder elementsOut = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder queueDepthSamples = new LongAdder();
+    private final LongAdder queueDepthTotal = new LongAdder();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param stage Description of the stage, as shown by {@link Stream#explain()}
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @param threadStats True to also measure CPU time and allocations, which costs a few more calls per element
+     */
+    StageMetrics(String stage, ExecutorService executorService, boolean threadStats) {
+        this.stage = stage;
+        this.executorService = executorService;
+        this.threadStats = threadStats;
+    }
+
+    public String stage() {
+        return stage;
+    }
+
+    public long elementsIn() {
+        return elementsIn.sum();
+    }
+
+    public long elementsOut() {
+        return elementsOut.sum();
+    }
+
+    public long wallNanos() {
+        return wallNanos.sum();
+    }
+
+    /**
+     * Returns the CPU time of the stage, 0 unless CPU time was requested and is supported by the JVM
+     */
+    public long cpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * Returns an estimate of the bytes allocated by the stage, 0 unless allocations were requested and are
+     * supported by the JVM
+     */
+    public long allocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * Returns the largest number of tasks seen waiting in the executor, 0 for sequential stages
+     */
+    public long maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Returns the mean number of tasks seen waiting in the executor, 0 for sequential stages
+     */
+    public double averageQueueDepth() {
+        long samples = queueDepthSamples.sum();
+        return samples == 0 ? 0.0 : (double) queueDepthTotal.sum() / samples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-24s in=%d out=%d wall=%.3fms cpu=%.3fms alloc=%dB queue(max)=%d",
+                stage, elementsIn(), elementsOut(), wallNanos() / 1e6, cpuNanos() / 1e6, allocatedBytes(), maxQueueDepth());
+    }
+
+    /**
+     * Wraps the sink of the stage so its input, output and time are measured
+     * @param function Wraps the downstream sink with the sink of the stage
+     * @param downstream Sink of the next stage
+     * @return Measuring sink of the stage
+     */
+    <IN, OUT> Sink<IN> measure(Function<Sink<OUT>, Sink<IN>> function, Sink<OUT> downstream) {
+        Probe probe = new Probe();
+        return new Inbound<>(probe, function.apply(new Outbound<>(probe, downstream)));
+    }
+
+    private void sampleQueueDepth() {
+        long depth;
+        if (executorService instanceof ForkJoinPool pool) {
+            depth = pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        } else if (executorService instanceof ThreadPoolExecutor pool) {
+            depth = pool.getQueue().size();
+        } else {
+            return;
+        }
+        queueDepthSamples.increment();
+        queueDepthTotal.add(depth);
+        maxQueueDepth.accumulate(depth);
+    }
+
+    private void publish(Probe probe) {
+        elementsIn.add(probe.in);
+        elementsOut.add(probe.out);
+        wallNanos.add(probe.wall);
+        cpuNanos.add(probe.cpu);
+        allocatedBytes.add(probe.allocated);
+        probe.in = probe.out = probe.wall = probe.cpu = probe.allocated = 0;
+    }
+
+    private static long cpuTime() {
+        return THREADS.getCurrentThreadCpuTime();
+    }
+
+    private static long allocated() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    /**
+     * Measurements of one sink of the stage, owned by the thread running it. The inbound side adds the time spent
+     * in the stage including the stages after it, the outbound side takes the time spent in those stages away.
+     */
+    private final class Probe {
+        private long in;
+        private long out;
+        private long wall;
+        private long cpu;
+        private long allocated;
+        private int depth;
+
+        void enter() {
+            if (depth++ > 0) {
+                return;
+            }
+            wall -= System.nanoTime();
+            if (threadStats) {
+                cpu -= cpuTime();
+                allocated -= allocated();
+            }
+        }
+
+        void exit() {
+            if (--depth > 0) {
+                return;
+            }
+            wall += System.nanoTime();
+            if (threadStats) {
+                cpu += cpuTime();
+                allocated += allocated();
+            }
+        }
+    }
+
+    private final class Inbound<IN> implements Sink<IN> {
+
+        private final Probe probe;
+        private final Sink<IN> sink;
+
+        Inbound(Probe probe, Sink<IN> sink) {
+            this.probe = probe;
+            this.sink = sink;
+        }
+
+        @Override
+        public void begin(long size) {
+            if (executorService != null) {
+                sampleQueueDepth();
+            }
+            probe.enter();
+            try {
+                sink.begin(size);
+            } finally {
+                probe.exit();
+            }
+        }
+
+        @Override
+        public void accept(IN item) {
+            probe.in++;
+            probe.enter();
+            try {
+                sink.accept(item);
+            } finally {
+                probe.exit();
+            }
+        }
+
+        @Override
+        public void end() {
+            probe.enter();
+            try {
+                sink.end();
+            } finally {
+                probe.exit();
+            }
+            publish(probe);
+        }
+
+        @Override
+        public boolean cancellationRequested() {
+            return sink.cancellationRequested();
+        }
+    }
+
+    /**
+     * Passes the output of the stage on, pausing the measurement of the stage while the next stages run
+     */
+    private final class Outbound<OUT> implements Sink<OUT> {
+
+        private final Probe probe;
+        private final Sink<OUT> downstream;
+
+        Outbound(Probe probe, Sink<OUT> downstream) {
+            this.probe = probe;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void begin(long size) {
+            probe.exit();
+            try {
+                downstream.begin(size);
+            } finally {
+                probe.enter();
+            }
+        }
+
+        @Override
+        public void accept(OUT item) {
+            probe.out++;
+            probe.exit();
+            try {
+                downstream.accept(item);
+            } finally {
+                probe.enter();
+            }
+        }
+
+        @Override
+        public void end() {
+            probe.exit();
+            try {
+                downstream.end();
+            } finally {
+                probe.enter();
+            }
+        }
+
+        @Override
+        public boolean cancellationRequested() {
+            return downstream.cancellationRequested();
+        }
+    }
+}
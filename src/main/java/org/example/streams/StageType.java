@@ -0,0 +1,48 @@
+package org.example.streams;
+
+/**
+ * Kind of an intermediate operation, used to reason about the shape of a pipeline
+ */
+public enum StageType {
+    FILTER,
+    MAP,
+    FLAT_MAP,
+    /** Replaces every element with the elements a mapper emits into a consumer */
+    MAP_MULTI,
+    /** Probes a hash table built from another stream */
+    JOIN,
+    PEEK,
+    ITERATE,
+    /** Groups consecutive elements into lists of a fixed size */
+    BATCH,
+    /** Slides a window of a fixed size over the elements */
+    WINDOW,
+    /** Groups runs of consecutive elements matching a predicate */
+    CHUNK_WHILE,
+    /** Sorted in natural order */
+    SORTED,
+    /** Sorted by a comparator */
+    SORTED_BY,
+    /** First k elements of a sort, kept in a bounded heap */
+    TOP_K,
+    /** Last k elements of a sort, kept in a bounded heap */
+    LAST_K,
+    DISTINCT,
+    SKIP,
+    SKIP_LAST,
+    LIMIT,
+    LAST,
+    /** Accumulates the elements of a parallel chunk into one container of a collector */
+    COLLECT;
+
+    /**
+     * Returns true if the stage passes on a subsequence of its input in the same order,
+     * so a sorted input stays sorted
+     */
+    public boolean keepsOrder() {
+        return switch (this) {
+            case FILTER, PEEK, DISTINCT, SKIP, SKIP_LAST, LIMIT, LAST -> true;
+            default -> false;
+        };
+    }
+}
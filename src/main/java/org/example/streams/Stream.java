@@ -3,13 +3,20 @@ package org.example.streams;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 
+import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.StreamSupport;
 
 /**
  * A custom implementation of a Stream-like processing library that supports both sequential
@@ -28,11 +35,16 @@ import java.util.function.Predicate;
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class Stream<T> {
 
-    /** Default thread pool for parallel operations */
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(8);
+    /** Default executor for parallel operations, the work-stealing pool sized from the available processors */
+    private static final ExecutorService executorService = ExecutionBackend.FORK_JOIN.executorService();
 
-    /** The underlying collection being processed */
-    private final Collection<?> collection;
+    /** Source of template streams, which describe stages that {@link Pipeline} and {@link MaterializedView} run elsewhere */
+    private static final Supplier<Spliterator<Object>> TEMPLATE = () -> {
+        throw new IllegalStateException("A template stream has no source, run it through its pipeline or view instead");
+    };
+
+    /** Supplies a fresh spliterator over the source elements for every terminal operation */
+    private final Supplier<? extends Spliterator<?>> source;
 
     /** List of transformation operations to be applied */
     private final List<TransformPipeline<?, ?>> transformPipelines;
@@ -40,19 +52,46 @@ public class Stream<T> {
     /** Flag indicating if operations should be executed in parallel */
     private final boolean isParallel;
 
+    /** Flag indicating if terminal operations may consume parallel results in the order they complete */
+    private final boolean isUnordered;
+
     /** Optional user-provided executor service for parallel operations */
     private final ExecutorService userProvidedExecutorService;
 
+    /** Tasks each run of parallel stages may have in flight, 0 for a few tasks per worker thread */
+    private final int maxInFlight;
+
+    /** Receives the measurements of every terminal operation, null if the stream is not instrumented */
+    private final PipelineMetrics metrics;
+
     /**
      * Creates a new Stream with the given collection
+     * <p>
+     * The collection is not copied, every terminal operation reads its current contents
+     *
      * @param collection The source collection
-     * @throws IllegalArgumentException if collection is null
+     * @throws NullPointerException if collection is null
      */
     public Stream(Collection<T> collection) {
-        this.collection = new ArrayList<>(collection);
-        this.transformPipelines = new ArrayList<>();
-        this.isParallel = false;
-        this.userProvidedExecutorService = null;
+        this(Objects.requireNonNull(collection, "Collection cannot be null")::spliterator, new ArrayList<>(), false, false, null, 0, null);
+    }
+
+    /**
+     * Creates a new Stream over a lazy source that produces elements on demand
+     * @param source Supplies a spliterator over the source elements for every terminal operation
+     * @return Stream over the source
+     */
+    static <T> Stream<T> fromSource(Supplier<? extends Spliterator<T>> source) {
+        return new Stream<>(source, new ArrayList<>(), false, false, null, 0, null);
+    }
+
+    /**
+     * Creates a stream without a source, to describe the stages of a {@link Pipeline} or {@link MaterializedView}
+     * @return Template stream, its terminal operations throw {@link IllegalStateException}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Stream<T> template() {
+        return fromSource((Supplier<Spliterator<T>>) (Supplier<?>) TEMPLATE);
     }
 
     /**
@@ -65,7 +104,109 @@ public class Stream<T> {
             throw new IllegalArgumentException("TransformPipeline cannot be null");
         }
         transformPipelines.add(transformPipeline);
-        return new Stream<>(collection, transformPipelines, isParallel, userProvidedExecutorService);
+        return new Stream<>(source, transformPipelines, isParallel, isUnordered, userProvidedExecutorService, maxInFlight, metrics);
+    }
+
+    /**
+     * Returns the pipelines of this stream followed by one extra stage that is private to a terminal operation,
+     * leaving the stream itself untouched
+     * @param transformPipeline Stage to run before the terminal sink
+     * @return Copy of the pipelines with the stage appended
+     */
+    private List<TransformPipeline<?, ?>> withPipeline(TransformPipeline<T, ?> transformPipeline) {
+        List<TransformPipeline<?, ?>> pipelines = new ArrayList<>(transformPipelines.size() + 1);
+        pipelines.addAll(transformPipelines);
+        pipelines.add(transformPipeline);
+        return pipelines;
+    }
+
+    /**
+     * Returns the stages a terminal operation actually runs, see {@link PipelineOptimizer}
+     * @param transformPipelines Stages as built by the stream
+     * @param terminalType What the terminal operation depends on
+     * @return Optimized stages
+     */
+    private List<TransformPipeline<?, ?>> plan(List<TransformPipeline<?, ?>> transformPipelines, TerminalType terminalType) {
+        return PipelineOptimizer.optimize(transformPipelines, terminalType, parallelExecutor());
+    }
+
+    /**
+     * Creates the pipeline a terminal operation runs, keeping parallel results in encounter order
+     * @param plan Stages to run
+     * @param terminalSupplier Creates the terminal sink
+     * @return Pipeline ready to reduce the source
+     */
+    private <IN, OUT> ReducePipeline<IN, OUT> reducePipeline(List<TransformPipeline<?, ?>> plan,
+                                                              Supplier<TerminalSink<IN, OUT>> terminalSupplier) {
+        return reducePipeline(plan, terminalSupplier, false);
+    }
+
+    /**
+     * Creates the pipeline a terminal operation runs, measuring its stages if the stream is instrumented
+     * @param plan Stages to run
+     * @param terminalSupplier Creates the terminal sink
+     * @param inCompletionOrder True to consume parallel results in the order they complete
+     * @return Pipeline ready to reduce the source
+     */
+    private <IN, OUT> ReducePipeline<IN, OUT> reducePipeline(List<TransformPipeline<?, ?>> plan,
+                                                              Supplier<TerminalSink<IN, OUT>> terminalSupplier,
+                                                              boolean inCompletionOrder) {
+        if (metrics == null) {
+            return new ReducePipeline<>(plan, terminalSupplier, inCompletionOrder, maxInFlight);
+        }
+        List<StageMetrics> run = new ArrayList<>(plan.size());
+        List<TransformPipeline<?, ?>> instrumented = metrics.instrument(plan, run);
+        Supplier<TerminalSink<IN, OUT>> measured = () -> new TerminalSink<IN, OUT>() {
+            private final TerminalSink<IN, OUT> terminal = terminalSupplier.get();
+
+            @Override
+            public void begin(long size) {
+                terminal.begin(size);
+            }
+
+            @Override
+            public void accept(IN item) {
+                terminal.accept(item);
+            }
+
+            @Override
+            public void end() {
+                terminal.end();
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return terminal.cancellationRequested();
+            }
+
+            @Override
+            public OUT result() {
+                OUT result = terminal.result();
+                metrics.finish(run);
+                return result;
+            }
+        };
+        return new ReducePipeline<>(instrumented, measured, inCompletionOrder, maxInFlight);
+    }
+
+    /**
+     * Returns true if a terminal operation that ignores order may consume the parallel results of the plan in the
+     * order they complete: always after {@link #unordered()}, otherwise only if no stage that depends on the
+     * encounter order follows the parallel stages
+     * @param plan Stages the terminal operation runs
+     * @return True to consume parallel results in completion order
+     */
+    private boolean inCompletionOrder(List<TransformPipeline<?, ?>> plan) {
+        return isUnordered || PipelineOptimizer.allowsCompletionOrder(plan);
+    }
+
+    /**
+     * Returns what a terminal operation that could depend on the encounter order actually depends on
+     * @param terminalType What the terminal operation depends on in an ordered stream
+     * @return UNORDERED for unordered streams, the given type otherwise
+     */
+    private TerminalType orderFor(TerminalType terminalType) {
+        return isUnordered ? TerminalType.UNORDERED : terminalType;
     }
 
     /**
@@ -85,20 +226,16 @@ public class Stream<T> {
         if (predicate == null) {
             throw new IllegalArgumentException("Predicate cannot be null");
         }
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> filtered = new ArrayList<>();
-            List<Pair<T, AbstractStreamFuture<Boolean>>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(new Pair<>(item, execute(predicate, item)));
-            }
-            for (Pair<T, AbstractStreamFuture<Boolean>> pair : futures) {
-                if (pair.value().get()) {
-                    filtered.add(pair.key());
-                }
-            }
-            return filtered;
-        });
-        return appendPipeline(transformPipeline);
+        return appendPipeline(filterPipeline(predicate));
+    }
+
+    /**
+     * Creates the pipeline stage used by {@link #filter(Predicate)}
+     * @param predicate Condition to test elements against
+     * @return Stage passing on only the matching elements
+     */
+    private TransformPipeline<T, T> filterPipeline(Predicate<T> predicate) {
+        return TransformPipeline.filter(predicate, parallelExecutor());
     }
 
     /**
@@ -118,18 +255,16 @@ public class Stream<T> {
         if (mapper == null) {
             throw new IllegalArgumentException("Mapper cannot be null");
         }
-        TransformPipeline<T, U> transformPipeline = new TransformPipeline<>(items -> {
-            List<U> mapped = new ArrayList<>();
-            List<AbstractStreamFuture<U>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(execute(mapper, item));
-            }
-            for (AbstractStreamFuture<U> future : futures) {
-                mapped.add(future.get());
-            }
-            return mapped;
-        });
-        return appendPipeline(transformPipeline);
+        return appendPipeline(mapPipeline(mapper));
+    }
+
+    /**
+     * Creates the pipeline stage used by {@link #map(Function)}
+     * @param mapper Function to transform elements
+     * @return Stage passing on the transformed elements
+     */
+    private <U> TransformPipeline<T, U> mapPipeline(Function<T, U> mapper) {
+        return TransformPipeline.map(mapper, parallelExecutor());
     }
 
     /**
@@ -144,13 +279,213 @@ public class Stream<T> {
      * @return Stream of pairs with index and element
      */
     public Stream<Pair<Long, T>> iterate() {
-        TransformPipeline<T, Pair<Long, T>> transformPipeline = new TransformPipeline<>(items -> {
-            List<Pair<Long, T>> indexed = new ArrayList<>();
-            long index = 0L;
-            for (T item : items) {
-                indexed.add(new Pair<>(index++, item));
+        return appendPipeline(indexPipeline(0L, Pair::new));
+    }
+
+    /**
+     * Pairs every element with its position in the stream
+     * <p>
+     * Example:
+     * <pre>
+     * List<Pair<String, Long>> indexed = new Stream<>(Arrays.asList("a", "b", "c"))
+     *     .zipWithIndex()
+     *     .toList(); // Returns [(a, 0), (b, 1), (c, 2)]
+     * </pre>
+     *
+     * @return Stream of pairs with element and index
+     */
+    public Stream<Pair<T, Long>> zipWithIndex() {
+        return zipWithIndex(0L);
+    }
+
+    /**
+     * Pairs every element with its position in the stream, counting from the given start
+     * <p>
+     * Example:
+     * <pre>
+     * List<Pair<String, Long>> lines = new Stream<>(Arrays.asList("a", "b"))
+     *     .zipWithIndex(1)
+     *     .toList(); // Returns [(a, 1), (b, 2)]
+     * </pre>
+     *
+     * @param start Index of the first element
+     * @return Stream of pairs with element and index
+     */
+    public Stream<Pair<T, Long>> zipWithIndex(long start) {
+        return appendPipeline(indexPipeline(start, (index, item) -> new Pair<>(item, index)));
+    }
+
+    /**
+     * Creates a sequential stage combining every element with its index, so parallel chunks are numbered in
+     * encounter order
+     */
+    private <U> TransformPipeline<T, U> indexPipeline(long start, BiFunction<Long, T, U> combiner) {
+        return new TransformPipeline<>(StageType.ITERATE, start, downstream -> new ChainedSink<T, U>(downstream) {
+            private long index = start;
+
+            @Override
+            public void begin(long size) {
+                downstream.begin(size);
+            }
+
+            @Override
+            public void accept(T item) {
+                downstream.accept(combiner.apply(index++, item));
+            }
+        });
+    }
+
+    /**
+     * Groups consecutive elements into lists of the given size, the last list holding the remaining elements.
+     * <p>
+     * Batches are built one at a time while the elements flow through, so only one batch is held in memory.
+     * Every batch is a new list the downstream stages may keep.
+     * <p>
+     * Example:
+     * <pre>
+     * new Stream<>(records)
+     *     .batch(500)
+     *     .forEach(repository::saveAll); // One write per 500 records
+     * </pre>
+     *
+     * @param size Number of elements per batch
+     * @return Stream of batches
+     * @throws IllegalArgumentException if size is not positive
+     */
+    public Stream<List<T>> batch(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        TransformPipeline<T, List<T>> transformPipeline = new TransformPipeline<>(StageType.BATCH, size, downstream -> new ChainedSink<T, List<T>>(downstream) {
+            private List<T> batch = new ArrayList<>();
+
+            @Override
+            public void begin(long count) {
+                downstream.begin(count < 0 ? -1 : (count + size - 1) / size);
+            }
+
+            @Override
+            public void accept(T item) {
+                batch.add(item);
+                if (batch.size() == size) {
+                    downstream.accept(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+
+            @Override
+            public void end() {
+                if (!batch.isEmpty() && !downstream.cancellationRequested()) {
+                    downstream.accept(batch);
+                }
+                batch = null;
+                downstream.end();
+            }
+        });
+        return appendPipeline(transformPipeline);
+    }
+
+    /**
+     * Slides a window of the given size over the stream, moving it by step elements at a time.
+     * <p>
+     * Only full windows are passed on, so a stream shorter than the window produces none. A step larger than the
+     * size skips the elements between two windows. Only the current window is held in memory and every window is a
+     * new list the downstream stages may keep.
+     * <p>
+     * Example:
+     * <pre>
+     * List<List<Integer>> windows = new Stream<>(Arrays.asList(1, 2, 3, 4, 5))
+     *     .window(3, 1)
+     *     .toList(); // Returns [[1, 2, 3], [2, 3, 4], [3, 4, 5]]
+     *
+     * List<Double> movingAverages = new Stream<>(prices)
+     *     .window(20, 1)
+     *     .map(window -> new Stream<>(window).average(price -> price))
+     *     .toList();
+     * </pre>
+     *
+     * @param size Number of elements per window
+     * @param step Number of elements the window moves by
+     * @return Stream of windows
+     * @throws IllegalArgumentException if size or step is not positive
+     */
+    public Stream<List<T>> window(int size, int step) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        if (step <= 0) {
+            throw new IllegalArgumentException("Step must be positive");
+        }
+        TransformPipeline<T, List<T>> transformPipeline = new TransformPipeline<>(StageType.WINDOW, size, downstream -> new ChainedSink<T, List<T>>(downstream) {
+            private final Deque<T> window = new ArrayDeque<>(size);
+            // elements between two windows when the step is larger than the size
+            private int toSkip = 0;
+
+            @Override
+            public void accept(T item) {
+                if (toSkip > 0) {
+                    toSkip--;
+                    return;
+                }
+                window.add(item);
+                if (window.size() < size) {
+                    return;
+                }
+                downstream.accept(new ArrayList<>(window));
+                if (step >= size) {
+                    window.clear();
+                    toSkip = step - size;
+                } else {
+                    for (int i = 0; i < step; i++) {
+                        window.poll();
+                    }
+                }
+            }
+        });
+        return appendPipeline(transformPipeline);
+    }
+
+    /**
+     * Groups runs of consecutive elements into lists, starting a new list whenever the predicate does not hold for
+     * an element and the one before it.
+     * <p>
+     * Only the current run is held in memory and every run is a new list the downstream stages may keep.
+     * <p>
+     * Example:
+     * <pre>
+     * List<List<Integer>> runs = new Stream<>(Arrays.asList(1, 2, 4, 9, 10, 11, 12, 15))
+     *     .chunkWhile((previous, next) -> next == previous + 1)
+     *     .toList(); // Returns [[1, 2], [4], [9, 10, 11, 12], [15]]
+     * </pre>
+     *
+     * @param predicate Tests the previous and the next element, true to keep them in the same list
+     * @return Stream of runs
+     * @throws IllegalArgumentException if predicate is null
+     */
+    public Stream<List<T>> chunkWhile(BiPredicate<T, T> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Predicate cannot be null");
+        }
+        TransformPipeline<T, List<T>> transformPipeline = new TransformPipeline<>(StageType.CHUNK_WHILE, predicate, downstream -> new ChainedSink<T, List<T>>(downstream) {
+            private List<T> chunk = new ArrayList<>();
+
+            @Override
+            public void accept(T item) {
+                if (!chunk.isEmpty() && !predicate.test(chunk.get(chunk.size() - 1), item)) {
+                    downstream.accept(chunk);
+                    chunk = new ArrayList<>();
+                }
+                chunk.add(item);
+            }
+
+            @Override
+            public void end() {
+                if (!chunk.isEmpty() && !downstream.cancellationRequested()) {
+                    downstream.accept(chunk);
+                }
+                chunk = null;
+                downstream.end();
             }
-            return indexed;
         });
         return appendPipeline(transformPipeline);
     }
@@ -158,6 +493,10 @@ public class Stream<T> {
     /**
      * Flattens nested streams into a single stream
      * <p>
+     * The elements of every inner stream are pushed straight into the next stage, without a terminal operation or
+     * a list per inner stream, and reading an inner stream stops as soon as a later stage stops the stream.
+     * A null inner stream counts as empty. See {@link #mapMulti(BiConsumer)} to fan out without inner streams.
+     * <p>
      * Example:
      * <pre>
      * List<List<Integer>> nested = Arrays.asList(
@@ -176,22 +515,290 @@ public class Stream<T> {
         if (flatMapper == null) {
             throw new IllegalArgumentException("FlatMapper cannot be null");
         }
-        TransformPipeline<T, U> transformPipeline = new TransformPipeline<>(items -> {
-            List<U> flatMapped = new ArrayList<>();
-            List<AbstractStreamFuture<Stream<U>>> futures = new ArrayList<>();
-
-            for (T item : items) {
-                futures.add(execute(flatMapper, item));
+        TransformPipeline<T, U> transformPipeline = new TransformPipeline<>(StageType.FLAT_MAP, flatMapper, downstream -> new ChainedSink<T, U>(downstream) {
+            @Override
+            public void accept(T item) {
+                Stream<U> inner = flatMapper.apply(item);
+                if (inner != null) {
+                    inner.pushInto(downstream);
+                }
             }
-            for (AbstractStreamFuture<Stream<U>> future : futures) {
-                Stream<U> stream = future.get();
-                flatMapped.addAll(stream.toList());
+        }, parallelExecutor());
+        return appendPipeline(transformPipeline);
+    }
+
+    /**
+     * Replaces every element with the elements the mapper passes to the consumer, zero or more of them
+     * <p>
+     * Unlike flatMap no inner stream is created: the consumer pushes straight into the next stage, which makes
+     * this the cheapest way to fan one element out into many. Elements passed to the consumer after a later stage
+     * stopped the stream, for example after limit, are dropped.
+     * <p>
+     * Example:
+     * <pre>
+     * List<String> words = new Stream<>(Arrays.asList("a b", "c"))
+     *     .<String>mapMulti((line, emit) -> {
+     *         for (String word : line.split(" ")) {
+     *             emit.accept(word);
+     *         }
+     *     })
+     *     .toList(); // Returns [a, b, c]
+     * </pre>
+     *
+     * @param mapper Passes the elements replacing an element to the consumer
+     * @return Stream of the emitted elements
+     * @throws IllegalArgumentException if mapper is null
+     */
+    public <U> Stream<U> mapMulti(BiConsumer<T, Consumer<U>> mapper) {
+        if (mapper == null) {
+            throw new IllegalArgumentException("Mapper cannot be null");
+        }
+        TransformPipeline<T, U> transformPipeline = new TransformPipeline<>(StageType.MAP_MULTI, mapper, downstream -> new ChainedSink<T, U>(downstream) {
+            private final Consumer<U> emit = mapped -> {
+                if (!downstream.cancellationRequested()) {
+                    downstream.accept(mapped);
+                }
+            };
+
+            @Override
+            public void accept(T item) {
+                mapper.accept(item, emit);
             }
-            return flatMapped;
-        });
+        }, parallelExecutor());
         return appendPipeline(transformPipeline);
     }
 
+    /**
+     * Pushes the elements of this stream into a sink of the pipeline it is nested in, on the calling thread.
+     * <p>
+     * Used by flatMap, so an inner stream costs no terminal operation and no intermediate list. The stages of this
+     * stream run sequentially, and the begin and end calls of the sink are left to the enclosing pipeline.
+     * @param downstream Sink of the enclosing pipeline
+     */
+    @SuppressWarnings("unchecked")
+    void pushInto(Sink<? super T> downstream) {
+        Sink<T> forward = new Sink<>() {
+            @Override
+            public void accept(T item) {
+                downstream.accept(item);
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return downstream.cancellationRequested();
+            }
+        };
+        Spliterator<?> spliterator = source.get();
+        try {
+            Sink<Object> sink = (Sink<Object>) forward;
+            if (!transformPipelines.isEmpty()) {
+                List<TransformPipeline<?, ?>> plan = TransformPipeline.forRun(PipelineOptimizer.optimize(transformPipelines, TerminalType.ORDERED, null));
+                Sink<?> chain = forward;
+                for (int i = plan.size() - 1; i >= 0; i--) {
+                    chain = plan.get(i).withExecutor(null).wrap(chain);
+                }
+                sink = (Sink<Object>) chain;
+            }
+            sink.begin(spliterator.getExactSizeIfKnown());
+            do {
+                if (sink.cancellationRequested()) {
+                    break;
+                }
+            } while (spliterator.tryAdvance(sink));
+            sink.end();
+        } finally {
+            ReducePipeline.close(spliterator);
+        }
+    }
+
+    /**
+     * Composes the stages of a template stream into a sink chain that passes single source elements through to the
+     * sink, for {@link MaterializedView} to propagate inserts and deletes. The stages run sequentially and the chain
+     * is never begun or ended, so only stages that keep no state between elements are allowed.
+     * @param downstream Receives the elements the stages produce for every source element
+     * @return Sink accepting source elements
+     * @throws IllegalArgumentException if the stream reads another source than the template or has a stateful stage
+     */
+    @SuppressWarnings("unchecked")
+    Sink<Object> deltaChain(Sink<? super T> downstream) {
+        if (source != TEMPLATE) {
+            throw new IllegalArgumentException("A view must read the collection it is built on, concat, zip, mergeSorted and limit(0) are not supported");
+        }
+        Sink<?> chain = downstream;
+        for (int i = transformPipelines.size() - 1; i >= 0; i--) {
+            TransformPipeline<?, ?> stage = transformPipelines.get(i);
+            switch (stage.type()) {
+                case FILTER, MAP, FLAT_MAP, MAP_MULTI, PEEK -> chain = stage.wrap(chain);
+                default -> throw new IllegalArgumentException("A view only supports filter, map, flatMap, mapMulti and peek stages, not " + stage.type());
+            }
+        }
+        return (Sink<Object>) chain;
+    }
+
+    /**
+     * Appends the elements of another stream after the elements of this stream
+     * <p>
+     * Both streams are read on demand. A parallel stream runs the two streams as separate chunks and splits
+     * the second one further if it can be split.
+     * <p>
+     * Example:
+     * <pre>
+     * List<Integer> all = new Stream<>(Arrays.asList(1, 2))
+     *     .concat(new Stream<>(Arrays.asList(3, 4)))
+     *     .toList(); // Returns [1, 2, 3, 4]
+     * </pre>
+     *
+     * @param other Stream whose elements follow
+     * @return Stream over the elements of both streams
+     * @throws IllegalArgumentException if other is null
+     */
+    public Stream<T> concat(Stream<T> other) {
+        if (other == null) {
+            throw new IllegalArgumentException("Other stream cannot be null");
+        }
+        return combined(() -> new ConcatSpliterator<>(spliterator(), other.spliterator()));
+    }
+
+    /**
+     * Pairs the elements of this stream with the elements of another stream by position, see {@link #zip(Stream, BiFunction)}
+     * <p>
+     * Example:
+     * <pre>
+     * List<Pair<String, Integer>> pairs = new Stream<>(Arrays.asList("a", "b", "c"))
+     *     .zip(new Stream<>(Arrays.asList(1, 2)))
+     *     .toList(); // Returns [(a, 1), (b, 2)]
+     * </pre>
+     *
+     * @param other Stream providing the values of the pairs
+     * @return Stream of pairs, as long as the shorter stream
+     * @throws IllegalArgumentException if other is null
+     */
+    public <U> Stream<Pair<T, U>> zip(Stream<U> other) {
+        return zip(other, Pair::new);
+    }
+
+    /**
+     * Combines the elements of this stream with the elements of another stream by position, ending with the
+     * shorter stream
+     * <p>
+     * Both streams are advanced in lockstep on the thread pulling the elements, so neither is buffered. A parallel
+     * stream hands batches of combined elements to its parallel stages.
+     * <p>
+     * Example:
+     * <pre>
+     * List<Integer> sums = new Stream<>(Arrays.asList(1, 2, 3))
+     *     .zip(new Stream<>(Arrays.asList(10, 20, 30)), Integer::sum)
+     *     .toList(); // Returns [11, 22, 33]
+     * </pre>
+     *
+     * @param other Stream providing the second argument of the combiner
+     * @param combiner Combines an element of each stream
+     * @return Stream of combined elements
+     * @throws IllegalArgumentException if other or combiner is null
+     */
+    public <U, R> Stream<R> zip(Stream<U> other, BiFunction<T, U, R> combiner) {
+        if (other == null) {
+            throw new IllegalArgumentException("Other stream cannot be null");
+        }
+        if (combiner == null) {
+            throw new IllegalArgumentException("Combiner cannot be null");
+        }
+        return combined(() -> new ZipSpliterator<>(spliterator(), other.spliterator(), combiner));
+    }
+
+    /**
+     * Merges this stream with another stream, both sorted in natural order, see {@link #mergeSorted(Stream, Comparator)}
+     * @param other Stream sorted in natural order
+     * @return Sorted stream over the elements of both streams
+     * @throws IllegalArgumentException if other is null
+     */
+    public Stream<T> mergeSorted(Stream<T> other) {
+        return mergeSorted(other, null);
+    }
+
+    /**
+     * Merges this stream with another stream sorted by the same comparator into one sorted stream
+     * <p>
+     * Only the next element of each stream is held, so merging costs one comparison per element instead of a sort
+     * of both streams. Equal elements of this stream come before those of the other stream.
+     * <p>
+     * Example:
+     * <pre>
+     * List<Integer> merged = new Stream<>(Arrays.asList(1, 4, 7))
+     *     .mergeSorted(new Stream<>(Arrays.asList(2, 3, 8)), Integer::compare)
+     *     .toList(); // Returns [1, 2, 3, 4, 7, 8]
+     * </pre>
+     *
+     * @param other Stream sorted by the comparator
+     * @param comparator Order of both streams, null for natural order
+     * @return Sorted stream over the elements of both streams
+     * @throws IllegalArgumentException if other is null
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<T> mergeSorted(Stream<T> other, Comparator<T> comparator) {
+        if (other == null) {
+            throw new IllegalArgumentException("Other stream cannot be null");
+        }
+        Comparator<? super T> order = comparator != null ? comparator : (Comparator<? super T>) Comparator.naturalOrder();
+        return combined(() -> new MergeSpliterator<>(spliterator(), other.spliterator(), order));
+    }
+
+    /**
+     * Joins the elements of this stream with the elements of another stream that have an equal key
+     * <p>
+     * The other stream is the build side: it is read into a hash table once per terminal operation, before this
+     * stream is read. This stream is the probe side and is streamed through the table, one lookup per element,
+     * instead of scanning the other stream for every element. On a parallel stream the probes run chunk by chunk
+     * on its executor. Elements without a match on the other side are dropped, as in an inner join.
+     * <p>
+     * Example:
+     * <pre>
+     * List<String> lines = new Stream<>(orders)
+     *     .join(new Stream<>(customers), Order::customerId, Customer::id,
+     *           (order, customer) -> customer.name() + ": " + order.total())
+     *     .toList(); // One line per order with a known customer
+     * </pre>
+     *
+     * @param other Build side, held in memory
+     * @param leftKey Key of an element of this stream
+     * @param rightKey Key of an element of the other stream
+     * @param combiner Combines two elements with an equal key
+     * @return Stream of combined elements, in the order of this stream and then of the other stream
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public <U, K, R> Stream<R> join(Stream<U> other, Function<T, K> leftKey, Function<U, K> rightKey, BiFunction<T, U, R> combiner) {
+        if (other == null || leftKey == null || rightKey == null || combiner == null) {
+            throw new IllegalArgumentException("Other stream, keys and combiner cannot be null");
+        }
+        // the build side is read once per run, and the table reaches every probe sink of the run through the stage
+        TransformPipeline.PerRun<T, R> probe = () -> {
+            Map<K, List<U>> table = other.toGroupedMap(rightKey, Function.identity());
+            return downstream -> new ChainedSink<T, R>(downstream) {
+                @Override
+                public void accept(T item) {
+                    List<U> matches = table.get(leftKey.apply(item));
+                    if (matches == null) {
+                        return;
+                    }
+                    for (U match : matches) {
+                        if (downstream.cancellationRequested()) {
+                            break;
+                        }
+                        downstream.accept(combiner.apply(item, match));
+                    }
+                }
+            };
+        };
+        return appendPipeline(new TransformPipeline<>(StageType.JOIN, other, probe, parallelExecutor()));
+    }
+
+    /**
+     * Creates a stream over a source combined from this stream and others, keeping the execution mode of this stream
+     */
+    private <U> Stream<U> combined(Supplier<? extends Spliterator<U>> source) {
+        return new Stream<>(source, new ArrayList<>(), isParallel, isUnordered, userProvidedExecutorService, maxInFlight, metrics);
+    }
+
     /**
      * Peeks at each element in the stream and applies the given consumer
      * <p>
@@ -209,10 +816,16 @@ public class Stream<T> {
         if (consumer == null) {
             throw new IllegalArgumentException("Consumer cannot be null");
         }
-        return map(item -> {
-            consumer.accept(item);
-            return item;
-        });
+        return appendPipeline(peekPipeline(consumer));
+    }
+
+    /**
+     * Creates the pipeline stage used by {@link #peek(Consumer)}
+     * @param consumer Consumer to apply to each element
+     * @return Stage passing on every element after applying the consumer
+     */
+    private TransformPipeline<T, T> peekPipeline(Consumer<T> consumer) {
+        return TransformPipeline.peek(consumer, parallelExecutor());
     }
 
     /**
@@ -227,7 +840,7 @@ public class Stream<T> {
      * @return Stream sorted in natural order
      */
     public Stream<T> sorted() {
-        return sorted(null);
+        return sorted((Comparator<T>) null);
     }
 
     /**
@@ -243,16 +856,96 @@ public class Stream<T> {
      * @return Stream sorted according to the comparator
      */
     public Stream<T> sorted(Comparator<T> comparator) {
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> sorted = new ArrayList<>(items);
-            sorted.sort(comparator);
-            return sorted;
+        StageType type = comparator == null ? StageType.SORTED : StageType.SORTED_BY;
+        // the sort needs every element, so the stage itself is sequential and a parallel stream sorts its buffer in parallel
+        ExecutorService sortExecutor = parallelExecutor();
+        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(type, comparator, downstream -> new ChainedSink<T, T>(downstream) {
+            private List<T> sorted;
+
+            @Override
+            public void begin(long size) {
+                sorted = size >= 0 ? new ArrayList<>((int) size) : new ArrayList<>();
+            }
+
+            @Override
+            public void accept(T item) {
+                sorted.add(item);
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return false; // every element is needed before the first one can be emitted
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void end() {
+                if (sortExecutor != null) {
+                    T[] items = (T[]) sorted.toArray();
+                    ParallelMergeSort.sort(items, comparator, sortExecutor);
+                    sorted = Arrays.asList(items);
+                } else {
+                    sorted.sort(comparator);
+                }
+                downstream.begin(sorted.size());
+                for (T item : sorted) {
+                    if (downstream.cancellationRequested()) {
+                        break;
+                    }
+                    downstream.accept(item);
+                }
+                sorted = null;
+                downstream.end();
+            }
         });
         return appendPipeline(transformPipeline);
     }
 
     /**
-     * Returns a stream with distinct elements
+     * Sorts elements in natural order, spilling to disk once they do not fit in memory,
+     * see {@link #sorted(Comparator, SpillOptions)}
+     * @param options Memory budget, serializer and directory of the run files
+     * @return Sorted stream
+     * @throws IllegalArgumentException if options is null
+     */
+    public Stream<T> sorted(SpillOptions<T> options) {
+        return sorted(null, options);
+    }
+
+    /**
+     * Sorts elements with the comparator, holding at most the memory budget of the options on the heap
+     * <p>
+     * Once the budget is used up the buffered elements are sorted and written to a run file, and the runs are
+     * merged back in sorted order when the input ends, one element per run at a time. A parallel stream sorts and
+     * writes runs on its executor while the next run is filled. An input that fits in the budget is sorted in
+     * memory without touching the disk. The sort is stable, like {@link #sorted(Comparator)}.
+     * <p>
+     * Example:
+     * <pre>
+     * new Stream<>(events)
+     *     .sorted(Comparator.comparing(Event::timestamp), new SpillOptions<>(1_000_000, SpillSerializer.jackson(Event.class)))
+     *     .forEach(writer::write); // Sorts any number of events with at most 1M of them on the heap
+     * </pre>
+     *
+     * @param comparator Sort order, null for natural order
+     * @param options Memory budget, serializer and directory of the run files
+     * @return Sorted stream
+     * @throws IllegalArgumentException if options is null
+     */
+    public Stream<T> sorted(Comparator<T> comparator, SpillOptions<T> options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Options cannot be null");
+        }
+        StageType type = comparator == null ? StageType.SORTED : StageType.SORTED_BY;
+        ExecutorService runExecutor = parallelExecutor();
+        return appendPipeline(new TransformPipeline<>(type, comparator,
+                downstream -> new ExternalSortSink<>(downstream, comparator, options, runExecutor)));
+    }
+
+    /**
+     * Returns a stream with distinct elements, keeping the first occurrence of each element in encounter order
+     * <p>
+     * Seen elements are tracked in a hash set. Directly after {@link #sorted()} only adjacent elements are compared.
      * <p>
      * Example:
      * <pre>
@@ -263,16 +956,113 @@ public class Stream<T> {
      * @return Stream with distinct elements
      */
     public Stream<T> distinct() {
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> distinct = new ArrayList<>();
-            for (T item : items) {
-                if (!distinct.contains(item)) {
-                    distinct.add(item);
+        if (isSortedNaturally()) {
+            // equal elements are adjacent once sorted, so only the previous element has to be remembered
+            return appendPipeline(new TransformPipeline<T, T>(StageType.DISTINCT, null, downstream -> new ChainedSink<T, T>(downstream) {
+                private boolean first = true;
+                private T previous;
+
+                @Override
+                public void accept(T item) {
+                    if (first || !Objects.equals(previous, item)) {
+                        first = false;
+                        previous = item;
+                        downstream.accept(item);
+                    }
+                }
+            }));
+        }
+        if (isChunked()) {
+            // every chunk removes its own duplicates in parallel, the sequential stage merges the per-chunk sets
+            return appendPipeline(distinctPipeline(parallelExecutor()))
+                    .appendPipeline(distinctPipeline(null));
+        }
+        return appendPipeline(distinctPipeline(null));
+    }
+
+    /**
+     * Removes duplicate elements, spilling to disk once the elements do not fit in memory
+     * <p>
+     * An input that fits in the memory budget is deduplicated in memory. A larger one is sorted externally by hash
+     * code, so duplicates meet without a set of every element, and the first occurrences are sorted externally back
+     * into encounter order, see {@link ExternalDistinctSink}. A parallel stream sorts and writes runs on its executor.
+     * The elements need equals and hashCode that survive the serializer.
+     * <p>
+     * Example:
+     * <pre>
+     * long visitors = StreamsUtils.lines(Path.of("access.log"))
+     *     .map(line -> line.split(" ")[0])
+     *     .distinct(new SpillOptions<>(5_000_000, SpillSerializer.jackson(String.class)))
+     *     .count();
+     * </pre>
+     *
+     * @param options Memory budget, serializer and directory of the run files
+     * @return Stream with the first occurrence of every element
+     * @throws IllegalArgumentException if options is null
+     */
+    public Stream<T> distinct(SpillOptions<T> options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Options cannot be null");
+        }
+        if (isSortedNaturally()) {
+            // equal elements are adjacent once sorted, which needs no memory at all
+            return distinct();
+        }
+        ExecutorService runExecutor = parallelExecutor();
+        return appendPipeline(new TransformPipeline<>(StageType.DISTINCT, null,
+                downstream -> new ExternalDistinctSink<>(downstream, options, runExecutor)));
+    }
+
+    /**
+     * Creates a hash based distinct stage that passes on the first occurrence of every element
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @return Distinct stage
+     */
+    private TransformPipeline<T, T> distinctPipeline(ExecutorService executorService) {
+        return new TransformPipeline<>(StageType.DISTINCT, null, downstream -> new ChainedSink<T, T>(downstream) {
+            private final Set<T> seen = new HashSet<>();
+
+            @Override
+            public void accept(T item) {
+                if (seen.add(item)) {
+                    downstream.accept(item);
                 }
             }
-            return distinct;
-        });
-        return appendPipeline(transformPipeline);
+        }, executorService);
+    }
+
+    /**
+     * Checks whether a parallel stage appended now would run chunk by chunk straight from the source,
+     * which is the case when every stage before it is parallel as well
+     * @return true if the stream is parallel and has no sequential stage yet
+     */
+    private boolean isChunked() {
+        if (!isParallel) {
+            return false;
+        }
+        for (TransformPipeline<?, ?> transformPipeline : transformPipelines) {
+            if (!transformPipeline.isParallel()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the elements reaching the end of the current pipeline are sorted in natural order
+     * @return true if the last order changing stage is a natural order sort
+     */
+    private boolean isSortedNaturally() {
+        for (int i = transformPipelines.size() - 1; i >= 0; i--) {
+            StageType type = transformPipelines.get(i).type();
+            if (type == StageType.SORTED) {
+                return true;
+            }
+            if (!type.keepsOrder()) {
+                return false;
+            }
+        }
+        return false;
     }
 
     /**
@@ -293,17 +1083,7 @@ public class Stream<T> {
         } else if (i == 0) {
             return this; // No need to skip anything
         }
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> skipped = new ArrayList<>();
-            int count = 0;
-            for (T item : items) {
-                if (count++ >= i) {
-                    skipped.add(item);
-                }
-            }
-            return skipped;
-        });
-        return appendPipeline(transformPipeline);
+        return appendPipeline(TransformPipeline.skip(i));
     }
 
     /**
@@ -324,16 +1104,17 @@ public class Stream<T> {
         } else if (i == 0) {
             return this;
         }
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> skipped = new ArrayList<>();
-            int count = 0;
-            int n = items.size() - i;
-            for (T item : items) {
-                if (count++ < n) {
-                    skipped.add(item);
+        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(StageType.SKIP_LAST, i, downstream -> new ChainedSink<T, T>(downstream) {
+            // holds back the last i elements seen, which are dropped once the input ends
+            private final Deque<T> window = new ArrayDeque<>();
+
+            @Override
+            public void accept(T item) {
+                window.add(item);
+                if (window.size() > i) {
+                    downstream.accept(window.poll());
                 }
             }
-            return skipped;
         });
         return appendPipeline(transformPipeline);
     }
@@ -354,21 +1135,9 @@ public class Stream<T> {
         if (i < 0) {
             return last(-i);
         } else if (i == 0) {
-            return new Stream<>(Collections.emptyList(), transformPipelines, isParallel, userProvidedExecutorService); // Return empty stream
-        }
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> limited = new ArrayList<>();
-            int count = 0;
-            for (T item : items) {
-                if (count++ < i) {
-                    limited.add(item);
-                } else {
-                    break;
-                }
-            }
-            return limited;
-        });
-        return appendPipeline(transformPipeline);
+            return new Stream<>(Spliterators::emptySpliterator, transformPipelines, isParallel, isUnordered, userProvidedExecutorService, maxInFlight, metrics); // Return empty stream
+        }
+        return appendPipeline(TransformPipeline.limit(i));
     }
 
     /**
@@ -387,18 +1156,39 @@ public class Stream<T> {
         if (i < 0) {
             return limit(-i);
         } else if (i == 0) {
-            return new Stream<>(Collections.emptyList(), transformPipelines, isParallel, userProvidedExecutorService); // Return empty stream
-        }
-        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(items -> {
-            List<T> limited = new ArrayList<>();
-            int count = 0;
-            int n = items.size() - i;
-            for (T item : items) {
-                if (count++ >= n) {
-                    limited.add(item);
+            return new Stream<>(Spliterators::emptySpliterator, transformPipelines, isParallel, isUnordered, userProvidedExecutorService, maxInFlight, metrics); // Return empty stream
+        }
+        TransformPipeline<T, T> transformPipeline = new TransformPipeline<>(StageType.LAST, i, downstream -> new ChainedSink<T, T>(downstream) {
+            private final Deque<T> window = new ArrayDeque<>();
+
+            @Override
+            public void begin(long size) {
+            }
+
+            @Override
+            public void accept(T item) {
+                window.add(item);
+                if (window.size() > i) {
+                    window.poll();
                 }
             }
-            return limited;
+
+            @Override
+            public boolean cancellationRequested() {
+                return false;
+            }
+
+            @Override
+            public void end() {
+                downstream.begin(window.size());
+                for (T item : window) {
+                    if (downstream.cancellationRequested()) {
+                        break;
+                    }
+                    downstream.accept(item);
+                }
+                downstream.end();
+            }
         });
         return appendPipeline(transformPipeline);
     }
@@ -407,6 +1197,10 @@ public class Stream<T> {
      * Reduces stream elements to a single value using an accumulator function
      * and returns the result
      * <p>
+     * The identity is applied once, in front of the first element, so it may be any starting value. Parallel streams
+     * reduce chunk by chunk without it, combine the partial results in encounter order and apply the identity to the
+     * combined result, so the accumulator must be associative.
+     * <p>
      * Example:
      * <pre>
      * Integer sum = new Stream<>(Arrays.asList(1, 2, 3, 4))
@@ -422,19 +1216,22 @@ public class Stream<T> {
         if (accumulator == null) {
             throw new IllegalArgumentException("Accumulator cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            T result = identity;
-            for (T item : items) {
-                result = accumulator.apply(result, item);
-            }
-            return result;
-        }, this).reduce(collection);
+        if (!isChunked()) {
+            return collect(Collectors.reducing(identity, accumulator::apply), TerminalType.ORDERED);
+        }
+        // seeding every chunk would apply the identity once per chunk
+        return collect(Collectors.reducing(accumulator::apply), TerminalType.ORDERED)
+                .map(result -> accumulator.apply(identity, result))
+                .orElse(identity);
     }
 
     /**
      * Reduces stream elements to a single value using an accumulator function
      * and returns an Optional result
      * <p>
+     * Parallel streams reduce chunk by chunk and combine the partial results in encounter order,
+     * so the accumulator must be associative.
+     * <p>
      * Example:
      * <pre>
      * Optional<Integer> sum = new Stream<>(Arrays.asList(1, 2, 3, 4))
@@ -449,22 +1246,51 @@ public class Stream<T> {
         if (accumulator == null) {
             throw new IllegalArgumentException("Accumulator cannot be null");
         }
-        return new ReducePipeline<T, Optional<T>>(transformPipelines, items -> {
-            if (items.isEmpty()) {
-                return Optional.empty();
-            }
-            Iterator<T> iterator = items.iterator();
-            T result = iterator.next();
-            while (iterator.hasNext()) {
-                T item = iterator.next();
-                result = accumulator.apply(result, item);
-            }
-            return Optional.ofNullable(result);
-        }, this).reduce(collection);
+        return collect(Collectors.reducing(accumulator::apply), TerminalType.ORDERED);
+    }
+
+    /**
+     * Reduces stream elements into a value of another type
+     * <p>
+     * Parallel streams reduce every chunk on its own, starting from the identity, and combine the partial results
+     * in encounter order, so the identity must not change a value it is combined with and both functions must be
+     * associative.
+     * <p>
+     * Example:
+     * <pre>
+     * Integer totalLength = new Stream<>(Arrays.asList("a", "bb", "ccc"))
+     *     .parallel()
+     *     .reduce(0, (length, s) -> length + s.length(), Integer::sum); // Returns 6
+     * </pre>
+     *
+     * @param identity Initial value of every partial reduction
+     * @param accumulator Function adding an element to a partial result
+     * @param combiner Function combining two partial results
+     * @return Reduced result
+     * @throws IllegalArgumentException if accumulator or combiner is null
+     */
+    public <U> U reduce(U identity, BiFunction<U, T, U> accumulator, BinaryOperator<U> combiner) {
+        if (accumulator == null || combiner == null) {
+            throw new IllegalArgumentException("Accumulator and Combiner cannot be null");
+        }
+        return collect(Collectors.reducing(identity, accumulator, combiner), TerminalType.ORDERED);
     }
 
     public long count() {
-        return new ReducePipeline<>(transformPipelines, items -> (long) items.size(), this).reduce(collection);
+        List<TransformPipeline<?, ?>> plan = plan(transformPipelines, TerminalType.UNORDERED);
+        return this.<T, Long>reducePipeline(plan, () -> new TerminalSink<>() {
+            private long count = 0;
+
+            @Override
+            public void accept(T item) {
+                count++;
+            }
+
+            @Override
+            public Long result() {
+                return count;
+            }
+        }, inCompletionOrder(plan)).reduce(source.get());
     }
 
     /**
@@ -484,18 +1310,7 @@ public class Stream<T> {
         if (comparator == null) {
             throw new IllegalArgumentException("Comparator cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            if (items.isEmpty()) {
-                return null;
-            }
-            T maxItem = null;
-            for (T item : items) {
-                if (maxItem == null || comparator.compare(item, maxItem) > 0) {
-                    maxItem = item;
-                }
-            }
-            return maxItem;
-        }, this).reduce(collection);
+        return reduce(BinaryOperator.maxBy(comparator)).orElse(null);
     }
 
     /**
@@ -515,23 +1330,15 @@ public class Stream<T> {
         if (comparator == null) {
             throw new IllegalArgumentException("Comparator cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            if (items.isEmpty()) {
-                return null;
-            }
-            T maxItem = null;
-            for (T item : items) {
-                if (maxItem == null || comparator.compare(item, maxItem) < 0) {
-                    maxItem = item;
-                }
-            }
-            return maxItem;
-        }, this).reduce(collection);
+        return reduce(BinaryOperator.minBy(comparator)).orElse(null);
     }
 
     /**
      * Calculates the sum of elements using the provided mapper function
      * <p>
+     * The values are added with compensation for rounding errors, see {@link CompensatedSum}.
+     * Parallel streams sum every chunk on its own and combine the partial sums.
+     * <p>
      * Example:
      * <pre>
      * Double sum = new Stream<>(Arrays.asList(1.0, 2.0, 3.0))
@@ -546,19 +1353,14 @@ public class Stream<T> {
         if (mapper == null) {
             throw new IllegalArgumentException("Mapper cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            Iterator<T> iterator = items.iterator();
-            double sum = 0.0;
-            while (iterator.hasNext()) {
-                sum += mapper.apply(iterator.next()).doubleValue();
-            }
-            return sum;
-        }, this).reduce(collection);
+        return collect(Collectors.compensatedSum(item -> mapper.apply(item).doubleValue()), TerminalType.UNORDERED).sum();
     }
 
     /**
      * Calculates the average of elements using the provided mapper function
      * <p>
+     * The values are added with compensation for rounding errors, parallel streams sum and count chunk by chunk.
+     * <p>
      * Example:
      * <pre>
      * Double average = new Stream<>(Arrays.asList(1.0, 2.0, 3.0))
@@ -573,16 +1375,7 @@ public class Stream<T> {
         if (mapper == null) {
             throw new IllegalArgumentException("Mapper cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            Iterator<T> iterator = items.iterator();
-            double sum = 0.0;
-            long count = 0;
-            while (iterator.hasNext()) {
-                sum += mapper.apply(iterator.next()).doubleValue();
-                count++;
-            }
-            return count == 0 ? 0.0 : sum / count;
-        }, this).reduce(collection);
+        return collect(Collectors.compensatedSum(item -> mapper.apply(item).doubleValue()), TerminalType.UNORDERED).average();
     }
 
     /**
@@ -602,18 +1395,26 @@ public class Stream<T> {
         if (predicate == null) {
             throw new IllegalArgumentException("Predicate cannot be null");
         }
-        return new ReducePipeline<T, Optional<T>>(transformPipelines, items -> {
-            List<Pair<T, AbstractStreamFuture<Boolean>>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(new Pair<>(item, execute(predicate, item)));
-            }
-            for (Pair<T, AbstractStreamFuture<Boolean>> future : futures) {
-                if (future.value().get()) {
-                    return Optional.of(future.key());
+        return this.<T, Optional<T>>reducePipeline(plan(withPipeline(filterPipeline(predicate)), orderFor(TerminalType.ORDERED)), () -> new TerminalSink<>() {
+            private Optional<T> found = Optional.empty();
+
+            @Override
+            public void accept(T item) {
+                if (found.isEmpty()) {
+                    found = Optional.of(item);
                 }
             }
-            return Optional.empty();
-        }, this).reduce(collection);
+
+            @Override
+            public boolean cancellationRequested() {
+                return found.isPresent();
+            }
+
+            @Override
+            public Optional<T> result() {
+                return found;
+            }
+        }, isUnordered).reduce(source.get());
     }
 
     /**
@@ -632,16 +1433,30 @@ public class Stream<T> {
         if (consumer == null) {
             throw new IllegalArgumentException("Consumer cannot be null");
         }
-        new ReducePipeline<T, Void>(transformPipelines, items -> {
-            List<AbstractStreamFuture<Void>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(execute(consumer, item));
+        if (isParallel) {
+            this.<T, Void>reducePipeline(plan(withPipeline(peekPipeline(consumer)), orderFor(TerminalType.ORDERED)), () -> new TerminalSink<>() {
+                @Override
+                public void accept(T item) {
+                }
+
+                @Override
+                public Void result() {
+                    return null;
+                }
+            }, isUnordered).reduce(source.get());
+            return;
+        }
+        this.<T, Void>reducePipeline(plan(transformPipelines, orderFor(TerminalType.ORDERED)), () -> new TerminalSink<>() {
+            @Override
+            public void accept(T item) {
+                consumer.accept(item);
             }
-            for (AbstractStreamFuture<Void> future : futures) {
-                future.get();
+
+            @Override
+            public Void result() {
+                return null;
             }
-            return null;
-        }, this).reduce(collection);
+        }, isUnordered).reduce(source.get());
     }
 
     /**
@@ -661,18 +1476,25 @@ public class Stream<T> {
         if (predicate == null) {
             throw new IllegalArgumentException("Predicate cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            List<AbstractStreamFuture<Boolean>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(execute(predicate, item));
+        List<TransformPipeline<?, ?>> plan = plan(withPipeline(filterPipeline(predicate)), TerminalType.UNORDERED);
+        return this.<T, Boolean>reducePipeline(plan, () -> new TerminalSink<>() {
+            private boolean matched = false;
+
+            @Override
+            public void accept(T item) {
+                matched = true;
             }
-            for (AbstractStreamFuture<Boolean> future : futures) {
-                if (future.get()) {
-                    return true;
-                }
+
+            @Override
+            public boolean cancellationRequested() {
+                return matched;
             }
-            return false;
-        }, this).reduce(collection);
+
+            @Override
+            public Boolean result() {
+                return matched;
+            }
+        }, inCompletionOrder(plan)).reduce(source.get());
     }
 
     /**
@@ -692,18 +1514,7 @@ public class Stream<T> {
         if (predicate == null) {
             throw new IllegalArgumentException("Predicate cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            List<AbstractStreamFuture<Boolean>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(execute(predicate, item));
-            }
-            for (AbstractStreamFuture<Boolean> future : futures) {
-                if (!future.get()) {
-                    return false;
-                }
-            }
-            return true;
-        }, this).reduce(collection);
+        return !anyMatch(predicate.negate());
     }
 
     /**
@@ -723,22 +1534,11 @@ public class Stream<T> {
         if (predicate == null) {
             throw new IllegalArgumentException("Predicate cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            List<AbstractStreamFuture<Boolean>> futures = new ArrayList<>();
-            for (T item : items) {
-                futures.add(execute(predicate, item));
-            }
-            for (AbstractStreamFuture<Boolean> future : futures) {
-                if (future.get()) {
-                    return false;
-                }
-            }
-            return true;
-        }, this).reduce(collection);
+        return !anyMatch(predicate);
     }
 
     public List<T> toList() {
-        return toList(ArrayList.class);
+        return collect(Collectors.toList());
     }
 
     /**
@@ -753,20 +1553,11 @@ public class Stream<T> {
      * @param clazz Class of the list to create
      * @return List containing elements from the stream
      */
-    @SuppressWarnings("unchecked")
     public <L extends List<?>> List<T> toList(Class<L> clazz) {
         if (clazz == null) {
             throw new IllegalArgumentException("List class cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            try {
-                List<T> list = (List<T>) clazz.getDeclaredConstructor().newInstance();
-                list.addAll(items);
-                return list;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create list of type " + clazz.getName(), e);
-            }
-        }, this).reduce(collection);
+        return collect(Collectors.toCollection(instances(clazz, "list")));
     }
 
     /**
@@ -781,7 +1572,7 @@ public class Stream<T> {
      * @return Set containing elements from the stream
      */
     public Set<T> toSet() {
-        return toSet(HashSet.class);
+        return collect(Collectors.toSet(), TerminalType.SET);
     }
 
     /**
@@ -796,20 +1587,11 @@ public class Stream<T> {
      * @param clazz Class of the set to create
      * @return Set containing elements from the stream
      */
-    @SuppressWarnings("unchecked")
     public <S extends Set<?>> Set<T> toSet(Class<S> clazz) {
         if (clazz == null) {
             throw new IllegalArgumentException("Set class cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            try {
-                Set<T> list = (Set<T>) clazz.getDeclaredConstructor().newInstance();
-                list.addAll(items);
-                return list;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create list of type " + clazz.getName(), e);
-            }
-        }, this).reduce(collection);
+        return collect(Collectors.toCollection(instances(clazz, "set")), TerminalType.SET);
     }
 
     /**
@@ -907,30 +1689,11 @@ public class Stream<T> {
      * @return Map containing elements from the stream
      * @throws IllegalArgumentException if any parameter is null
      */
-    @SuppressWarnings("unchecked")
     public <M extends Map<?, ?>, K, V> Map<K, V> toMap(Function<T, K> keyMapper, Function<T, V> valueMapper, BiFunction<V, V, V> accumulator, Class<M> mapClass) {
         if (keyMapper == null || valueMapper == null || accumulator == null || mapClass == null) {
             throw new IllegalArgumentException("KeyMapper, ValueMapper, Accumulator and MapClass cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            try {
-                Map<K, V> map = (Map<K, V>) mapClass.getDeclaredConstructor().newInstance();
-                for (T item : items) {
-                    K key = keyMapper.apply(item);
-                    V value = valueMapper.apply(item);
-                    map.compute(key, (k, v) -> {
-                        if (v == null) {
-                            return value;
-                        } else {
-                            return accumulator.apply(v, valueMapper.apply(item));
-                        }
-                    });
-                }
-                return map;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create map of type " + mapClass.getName(), e);
-            }
-        }, this).reduce(collection);
+        return collect(Collectors.toMap(keyMapper, valueMapper, accumulator::apply, instances(mapClass, "map")));
     }
 
     /**
@@ -950,12 +1713,11 @@ public class Stream<T> {
      * @return Map containing grouped elements
      * @throws IllegalArgumentException if any parameter is null
      */
-    @SuppressWarnings("unchecked")
     public <K, V> Map<K, List<V>> toGroupedMap(Function<T, K> keyMapper, Function<T, V> valueMapper) {
         if (keyMapper == null || valueMapper == null) {
             throw new IllegalArgumentException("KeyMapper and ValueMapper cannot be null");
         }
-        return (Map) toGroupedMap(keyMapper, valueMapper, HashMap.class, ArrayList.class);
+        return collect(Collectors.groupingBy(keyMapper, Collectors.mapping(valueMapper, Collectors.toList())));
     }
 
     /**
@@ -979,31 +1741,160 @@ public class Stream<T> {
      * @return Map containing grouped elements
      * @throws IllegalArgumentException if any parameter is null
      */
-    @SuppressWarnings("unchecked")
     public <M extends Map<?, ?>, C extends Collection<?>, K, V> Map<K, Collection<V>> toGroupedMap(Function<T, K> keyMapper, Function<T, V> valueMapper, Class<M> mapClass, Class<C> collectionClass) {
         if (keyMapper == null || valueMapper == null || mapClass == null || collectionClass == null) {
             throw new IllegalArgumentException("KeyMapper, ValueMapper, MapClass and CollectionClass cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            try {
-                Map<K, Collection<V>> map = (Map<K, Collection<V>>) mapClass.getDeclaredConstructor().newInstance();
-                for (T item : items) {
-                    K key = keyMapper.apply(item);
-                    V value = valueMapper.apply(item);
-                    map.computeIfAbsent(key, k -> {
-                        try {
-                            return (Collection<V>) collectionClass.getDeclaredConstructor().newInstance();
-                        } catch (Exception e) {
-                            throw new RuntimeException("Failed to create collection of type " + collectionClass.getName(), e);
-                        }
-                    }).add(value);
+        Supplier<Map<K, Collection<V>>> mapFactory = instances(mapClass, "map");
+        Supplier<Collection<V>> collectionFactory = instances(collectionClass, "collection");
+        return collect(Collectors.groupingBy(keyMapper, mapFactory, Collectors.mapping(valueMapper, Collectors.toCollection(collectionFactory))));
+    }
+
+    /**
+     * Collects the elements with a collector
+     * <p>
+     * Parallel streams accumulate every chunk into a container of its own and combine the containers in a balanced
+     * tree as the chunks complete, or accumulate all chunks into one shared container if the collector is concurrent.
+     * <p>
+     * Example:
+     * <pre>
+     * Map<Boolean, List<Integer>> evenOdd = new Stream<>(Arrays.asList(1, 2, 3, 4))
+     *     .collect(Collectors.partitioningBy(n -> n % 2 == 0)); // Returns {false=[1, 3], true=[2, 4]}
+     * </pre>
+     *
+     * @param collector Collector to reduce the elements with
+     * @return Result of the collector
+     * @throws IllegalArgumentException if collector is null
+     */
+    public <A, R> R collect(Collector<T, A, R> collector) {
+        if (collector == null) {
+            throw new IllegalArgumentException("Collector cannot be null");
+        }
+        return collect(collector, collector.isUnordered() ? TerminalType.UNORDERED : TerminalType.ORDERED);
+    }
+
+    private <A, R> R collect(Collector<T, A, R> collector, TerminalType terminalType) {
+        A shared = isChunked() && collector.isConcurrent() ? collector.supplier().get() : null;
+        return collectPipeline(collector, terminalType, shared).reduce(source.get());
+    }
+
+    /**
+     * Creates the pipeline that collects the elements with a collector
+     * @param collector Collector to reduce the elements with
+     * @param terminalType What the terminal operation depends on
+     * @param shared Container all parallel chunks accumulate into, null to give every chunk a container of its own
+     * @return Pipeline ready to reduce the source
+     */
+    private <A, R> ReducePipeline<?, R> collectPipeline(Collector<T, A, R> collector, TerminalType terminalType, A shared) {
+        Supplier<A> supplier = collector.supplier();
+        BiConsumer<A, T> accumulator = collector.accumulator();
+        if (!isChunked()) {
+            return this.<T, R>reducePipeline(plan(transformPipelines, terminalType), () -> new TerminalSink<>() {
+                private final A container = supplier.get();
+
+                @Override
+                public void accept(T item) {
+                    accumulator.accept(container, item);
                 }
 
-                return map;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create map of type " + mapClass.getName(), e);
+                @Override
+                public R result() {
+                    return collector.finisher().apply(container);
+                }
+            }, isUnordered && collector.isUnordered());
+        }
+        // every chunk accumulates into a container of its own and hands it on once, or into the shared container
+        TransformPipeline<T, A> collectPipeline = new TransformPipeline<>(StageType.COLLECT, collector, downstream -> new ChainedSink<T, A>(downstream) {
+            private A container;
+
+            @Override
+            public void accept(T item) {
+                if (container == null) {
+                    container = shared != null ? shared : supplier.get();
+                }
+                accumulator.accept(container, item);
+            }
+
+            @Override
+            public void end() {
+                if (container != null && shared == null) {
+                    downstream.accept(container);
+                }
+                downstream.end();
+            }
+        }, parallelExecutor());
+        BinaryOperator<A> combiner = collector.combiner();
+        return this.<A, R>reducePipeline(plan(withPipeline(collectPipeline), terminalType), () -> new TerminalSink<>() {
+            // partial results combined like a binary counter, so containers are merged in a balanced tree
+            private final Deque<Partial<A>> partials = new ArrayDeque<>();
+
+            @Override
+            public void accept(A container) {
+                int level = 0;
+                while (!partials.isEmpty() && partials.peek().level() == level) {
+                    container = combiner.apply(partials.pop().container(), container);
+                    level++;
+                }
+                partials.push(new Partial<>(container, level));
+            }
+
+            @Override
+            public R result() {
+                if (shared != null) {
+                    return collector.finisher().apply(shared);
+                }
+                A result = partials.isEmpty() ? supplier.get() : partials.pop().container();
+                while (!partials.isEmpty()) {
+                    result = combiner.apply(partials.pop().container(), result);
+                }
+                return collector.finisher().apply(result);
+            }
+        }, isUnordered && collector.isUnordered());
+    }
+
+    /**
+     * Plans the stages of this stream and the collector once, for {@link Pipeline} to run them over many sources.
+     * <p>
+     * Parallel chunks always accumulate into containers of their own, since concurrent runs cannot share one.
+     * Instrumented streams are planned again for every run, so every run gets measurements of its own.
+     *
+     * @param collector Collector to reduce the elements with
+     * @return Runs the compiled pipeline over a source and returns the result of the collector
+     * @throws IllegalArgumentException if the stream reads another source than the template
+     */
+    <A, R> Function<Spliterator<?>, R> compile(Collector<T, A, R> collector) {
+        if (source != TEMPLATE) {
+            throw new IllegalArgumentException("A pipeline must read the source it is applied to, concat, zip, mergeSorted and limit(0) cannot be compiled");
+        }
+        TerminalType terminalType = collector.isUnordered() ? TerminalType.UNORDERED : TerminalType.ORDERED;
+        if (metrics != null) {
+            return run -> collectPipeline(collector, terminalType, null).reduce(run);
+        }
+        ReducePipeline<?, R> compiled = collectPipeline(collector, terminalType, null);
+        return compiled::reduce;
+    }
+
+    /**
+     * Looks up the no-argument constructor of the class once and returns a supplier of new instances
+     * @param clazz Class to instantiate
+     * @param kind Kind of the instances, used in the error message
+     * @return Supplier creating a new instance on every call
+     */
+    @SuppressWarnings("unchecked")
+    private static <C> Supplier<C> instances(Class<?> clazz, String kind) {
+        Constructor<?> constructor;
+        try {
+            constructor = clazz.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException("Failed to create " + kind + " of type " + clazz.getName(), e);
+        }
+        return () -> {
+            try {
+                return (C) constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to create " + kind + " of type " + clazz.getName(), e);
             }
-        }, this).reduce(collection);
+        };
     }
 
     /**
@@ -1019,18 +1910,9 @@ public class Stream<T> {
      */
     @SuppressWarnings("unchecked")
     public T[] toArray() {
-        if (collection.isEmpty()) {
-            return (T[]) new Object[0]; // Return empty array if collection is empty
-        }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            @SuppressWarnings("unchecked")
-            T[] array = (T[]) new Object[items.size()];
-            int index = 0;
-            for (T item : items) {
-                array[index++] = item;
-            }
-            return array;
-        }, this).reduce(collection);
+        return (T[]) this.<T, List<T>>reducePipeline(plan(transformPipelines, TerminalType.ORDERED), () -> new CollectionSink<>(new ArrayList<>()))
+                .reduce(source.get())
+                .toArray();
     }
 
     /**
@@ -1045,13 +1927,7 @@ public class Stream<T> {
      * @return Joined string
      */
     public String joining() {
-        return new ReducePipeline<>(transformPipelines, items -> {
-            StringBuilder sb = new StringBuilder();
-            for (T item : items) {
-                sb.append(item.toString());
-            }
-            return sb.toString();
-        }, this).reduce(collection);
+        return joining("");
     }
 
     /**
@@ -1071,39 +1947,80 @@ public class Stream<T> {
         if (separator == null) {
             throw new IllegalArgumentException("Separator cannot be null");
         }
-        return new ReducePipeline<>(transformPipelines, items -> {
-            StringBuilder sb = new StringBuilder();
-            Iterator<T> iterator = items.iterator();
-            while (iterator.hasNext()) {
-                sb.append(iterator.next().toString());
-                if (iterator.hasNext()) {
+        return this.<T, String>reducePipeline(plan(transformPipelines, TerminalType.ORDERED), () -> new TerminalSink<>() {
+            private final StringBuilder sb = new StringBuilder();
+            private boolean first = true;
+
+            @Override
+            public void accept(T item) {
+                if (!first) {
                     sb.append(separator);
                 }
+                first = false;
+                sb.append(item.toString());
+            }
+
+            @Override
+            public String result() {
+                return sb.toString();
             }
-            return sb.toString();
-        }, this).reduce(collection);
+        }).reduce(source.get());
     }
 
     /**
-     * Returns an iterator over the elements in the stream
-     * This method is used to iterate through the stream elements
+     * Returns an iterator that pulls the elements through the stages on demand
+     * <p>
+     * Every call to hasNext processes only as many source elements as it takes to produce the next element,
+     * on the calling thread, also for parallel streams.
      * <p>
      * Example:
      * <pre>
-     * for (Iterator<String> it = new Stream<>(Arrays.asList("apple", "banana", "cherry")).iterator(); it.hasNext(); ) {
-     *             String fruit = it.next();
-     *             System. out. println(fruit);
-     * }
+     * Iterator<Integer> it = StreamsUtils.iterate(1, n -> n + 1).map(n -> n * n).iterator();
+     * it.next(); // Returns 1, after reading one element of the infinite source
      * </pre>
      *
      * @return Iterator over the stream elements
-     * @throws NullPointerException if the collection is null
      */
     public Iterator<T> iterator() {
-        if (collection == null) {
-            throw new NullPointerException("Collection cannot be null");
+        return Spliterators.iterator(spliterator());
+    }
+
+    /**
+     * Returns a spliterator over the elements of the stream, see {@link #iterator()}
+     * <p>
+     * A stream without stages hands out a spliterator of its source, which can still be split,
+     * unless the source holds resources that have to be closed once it is exhausted.
+     *
+     * @return Spliterator over the stream elements
+     */
+    @SuppressWarnings("unchecked")
+    public Spliterator<T> spliterator() {
+        if (transformPipelines.isEmpty()) {
+            Spliterator<?> spliterator = source.get();
+            if (!(spliterator instanceof AutoCloseable)) {
+                return (Spliterator<T>) spliterator;
+            }
+            return new PipelineSpliterator<>(() -> spliterator, transformPipelines);
         }
-        return new ReducePipeline<>(transformPipelines, Collection::iterator, this).reduce(collection);
+        return new PipelineSpliterator<>(source, plan(transformPipelines, TerminalType.ORDERED));
+    }
+
+    /**
+     * Bridges the stream to {@code java.util.stream} without copying, elements are pulled through the stages on demand
+     * <p>
+     * Example:
+     * <pre>
+     * int total = new Stream<>(Arrays.asList("a", "bb"))
+     *     .map(String::length)
+     *     .toJdkStream()
+     *     .mapToInt(Integer::intValue)
+     *     .sum(); // Returns 3
+     * </pre>
+     *
+     * @return JDK stream over the elements, parallel if this stream is parallel
+     */
+    public java.util.stream.Stream<T> toJdkStream() {
+        return StreamSupport.stream(spliterator(), isParallel);
     }
 
     /**
@@ -1132,6 +2049,180 @@ public class Stream<T> {
         System.out.print(this);
     }
 
+    /**
+     * Runs a terminal operation without blocking the calling thread
+     * <p>
+     * The terminal operation runs on {@link ExecutionBackend#VIRTUAL_THREADS}, where waiting for parallel stages only
+     * parks a cheap thread. Cancelling the returned future interrupts that thread, which stops the operation and
+     * cancels its running parallel tasks.
+     * <p>
+     * Example:
+     * <pre>
+     * CompletableFuture<Long> count = new Stream<>(Arrays.asList(1, 2, 3, 4))
+     *     .parallel()
+     *     .filter(n -> n % 2 == 0)
+     *     .async(Stream::count); // Completes with 2
+     * </pre>
+     *
+     * @param terminal Terminal operation to run on this stream
+     * @return Future completing with the result of the terminal operation, or exceptionally with its failure
+     * @throws IllegalArgumentException if terminal is null
+     */
+    public <R> CompletableFuture<R> async(Function<Stream<T>, R> terminal) {
+        if (terminal == null) {
+            throw new IllegalArgumentException("Terminal cannot be null");
+        }
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Future<?> task = ExecutionBackend.VIRTUAL_THREADS.executorService().submit(() -> {
+            try {
+                result.complete(terminal.apply(this));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Converts the stream to a list without blocking the calling thread, see {@link #async(Function)}
+     * <p>
+     * Example:
+     * <pre>
+     * new Stream<>(Arrays.asList(1, 2, 3))
+     *     .parallel()
+     *     .map(n -> n * 2)
+     *     .toListAsync()
+     *     .thenAccept(System.out::println); // Prints [2, 4, 6]
+     * </pre>
+     *
+     * @return Future completing with the list of all elements
+     */
+    public CompletableFuture<List<T>> toListAsync() {
+        return async(Stream::toList);
+    }
+
+    /**
+     * Converts the stream to a set without blocking the calling thread, see {@link #async(Function)}
+     * @return Future completing with the set of all elements
+     */
+    public CompletableFuture<Set<T>> toSetAsync() {
+        return async(Stream::toSet);
+    }
+
+    /**
+     * Counts the elements without blocking the calling thread, see {@link #async(Function)}
+     * @return Future completing with the number of elements
+     */
+    public CompletableFuture<Long> countAsync() {
+        return async(Stream::count);
+    }
+
+    /**
+     * Reduces the elements without blocking the calling thread, see {@link #async(Function)}
+     * @param accumulator Function to combine elements
+     * @param identity Initial value for the reduction
+     * @return Future completing with the reduced result
+     * @throws IllegalArgumentException if accumulator is null
+     */
+    public CompletableFuture<T> reduceAsync(BiFunction<T, T, T> accumulator, T identity) {
+        if (accumulator == null) {
+            throw new IllegalArgumentException("Accumulator cannot be null");
+        }
+        return async(stream -> stream.reduce(accumulator, identity));
+    }
+
+    /**
+     * Reduces the elements without blocking the calling thread, see {@link #async(Function)}
+     * @param accumulator Function to combine elements
+     * @return Future completing with the reduced result, or empty if the stream is empty
+     * @throws IllegalArgumentException if accumulator is null
+     */
+    public CompletableFuture<Optional<T>> reduceAsync(BiFunction<T, T, T> accumulator) {
+        if (accumulator == null) {
+            throw new IllegalArgumentException("Accumulator cannot be null");
+        }
+        return async(stream -> stream.reduce(accumulator));
+    }
+
+    /**
+     * Executes a consumer for each element without blocking the calling thread, see {@link #async(Function)}
+     * @param consumer Consumer to apply to each element
+     * @return Future completing once every element has been consumed
+     * @throws IllegalArgumentException if consumer is null
+     */
+    public CompletableFuture<Void> forEachAsync(Consumer<T> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer cannot be null");
+        }
+        return async(stream -> {
+            stream.forEach(consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Collects the elements without blocking the calling thread, see {@link #async(Function)}
+     * @param collector Collector describing the reduction
+     * @return Future completing with the result of the collector
+     * @throws IllegalArgumentException if collector is null
+     */
+    public <A, R> CompletableFuture<R> collectAsync(Collector<T, A, R> collector) {
+        if (collector == null) {
+            throw new IllegalArgumentException("Collector cannot be null");
+        }
+        return async(stream -> stream.collect(collector));
+    }
+
+    /**
+     * Prints the stages of the stream as built and as they run for an ordered terminal operation such as toList
+     * This is a convenience method that calls {@link #explain(TerminalType)} and prints the result
+     * Example:
+     * <pre>
+     *     new Stream<>(Arrays.asList("apple", "banana", "cherry"))
+     *     .sorted()
+     *     .map(String::toUpperCase)
+     *     .limit(2)
+     *     .explain(); // Prints the original plan SORTED, MAP, LIMIT(2) and the optimized plan TOP_K(2), MAP
+     * </pre>
+     */
+    public void explain() {
+        System.out.print(explain(TerminalType.ORDERED));
+    }
+
+    /**
+     * Describes the stages of the stream as built and as they run for a terminal operation, one stage per line
+     * <p>
+     * Example:
+     * <pre>
+     * String plan = new Stream<>(Arrays.asList(3, 1, 2))
+     *     .sorted()
+     *     .explain(TerminalType.UNORDERED); // the sort is dropped from the optimized plan, as for count()
+     * </pre>
+     *
+     * @param terminalType What the terminal operation depends on
+     * @return Original and optimized plan
+     * @throws IllegalArgumentException if terminalType is null
+     */
+    public String explain(TerminalType terminalType) {
+        if (terminalType == null) {
+            throw new IllegalArgumentException("TerminalType cannot be null");
+        }
+        StringBuilder explain = new StringBuilder("Original plan:\n");
+        for (TransformPipeline<?, ?> transformPipeline : transformPipelines) {
+            explain.append("  ").append(transformPipeline).append('\n');
+        }
+        explain.append("Optimized plan:\n");
+        for (TransformPipeline<?, ?> transformPipeline : plan(transformPipelines, terminalType)) {
+            explain.append("  ").append(transformPipeline).append('\n');
+        }
+        return explain.toString();
+    }
+
     /**
      * Executes stream operations in parallel using a thread pool
      * <p>
@@ -1146,7 +2237,7 @@ public class Stream<T> {
      * @return Stream configured for parallel execution
      */
     public Stream<T> parallel() {
-        return new Stream<>(collection, transformPipelines, true, null);
+        return new Stream<>(source, transformPipelines, true, isUnordered, null, maxInFlight, metrics);
     }
 
     /**
@@ -1161,6 +2252,8 @@ public class Stream<T> {
      *     .toList(); // Processes in parallel using the provided executor
      * </pre>
      *
+     * The executor stays owned by the caller, terminal operations never shut it down
+     *
      * @param executorService User-provided executor service for parallel execution
      * @return Stream configured for parallel execution with the given executor
      */
@@ -1168,76 +2261,140 @@ public class Stream<T> {
         if (executorService == null) {
             throw new IllegalArgumentException("ExecutorService cannot be null");
         }
-        return new Stream<>(collection, transformPipelines, true, executorService);
+        return new Stream<>(source, transformPipelines, true, isUnordered, executorService, maxInFlight, metrics);
     }
 
     /**
-     * Executes stream operations sequentially
+     * Executes stream operations in parallel on one of the shared execution backends
      * <p>
      * Example:
      * <pre>
-     * List<Integer> result = new Stream<>(Arrays.asList(1, 2, 3, 4))
-     *     .sequential()
-     *     .map(n -> n * 2)
-     *     .toList(); // Processes sequentially
+     * List<String> pages = new Stream<>(urls)
+     *     .parallel(ExecutionBackend.VIRTUAL_THREADS)
+     *     .map(url -> download(url))
+     *     .toList(); // Blocking downloads run on virtual threads
      * </pre>
      *
-     * @return Stream configured for sequential execution
+     * @param backend Backend to run the following stages on
+     * @return Stream configured for parallel execution on the backend
+     * @throws IllegalArgumentException if backend is null
      */
-    public Stream<T> sequential() {
-        return new Stream<>(collection, transformPipelines, false, null);
+    public Stream<T> parallel(ExecutionBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("ExecutionBackend cannot be null");
+        }
+        return new Stream<>(source, transformPipelines, true, isUnordered, backend.executorService(), maxInFlight, metrics);
     }
 
     /**
-     * Executes a predicate against an item in the stream
+     * Lets terminal operations that do not promise an encounter order consume the results of parallel stages
+     * in the order they complete, so one slow element does not hold back the results behind it
+     * <p>
+     * forEach, find (which then returns any match), toSet and collectors with {@link Collector.Characteristics#UNORDERED}
+     * see the elements in completion order, and sorts in front of forEach and find are dropped. Stages following
+     * a parallel stage see its outputs in completion order too. Other terminal operations keep the encounter order.
+     * <p>
+     * Example:
+     * <pre>
+     * new Stream<>(urls)
+     *     .parallel(ExecutionBackend.VIRTUAL_THREADS)
+     *     .map(url -> download(url))
+     *     .unordered()
+     *     .forEach(page -> index(page)); // Pages are indexed as soon as they are downloaded
+     * </pre>
      *
-     * @param predicate Predicate to test the item
-     * @param item Item to test
-     * @return Future that resolves to true if the predicate matches, false otherwise
-     * @throws IllegalArgumentException if predicate is null
+     * @return Stream whose terminal operations may ignore the encounter order
      */
-    private AbstractStreamFuture<Boolean> execute(Predicate<T> predicate, T item) {
-        if (predicate == null) {
-            throw new IllegalArgumentException("Predicate cannot be null");
-        }
-        return execute((Function<T, Boolean>) t -> predicate.test(item), item);
+    public Stream<T> unordered() {
+        return new Stream<>(source, transformPipelines, isParallel, true, userProvidedExecutorService, maxInFlight, metrics);
     }
 
     /**
-     * Executes a function against an item in the stream
+     * Bounds the number of tasks each run of parallel stages keeps in flight
+     * <p>
+     * A parallel run reads the source in chunks of a bounded size and only submits the next chunk once fewer than
+     * the given number of chunks are running or waiting to be handed downstream. The elements held in memory are
+     * bounded by the window, however large the source is. The default is a few tasks per worker thread.
+     * <p>
+     * Example:
+     * <pre>
+     * long matches = StreamsUtils.lines(Path.of("huge.log"))
+     *     .parallel()
+     *     .maxInFlight(8)
+     *     .filter(line -> line.contains("ERROR"))
+     *     .count(); // Reads the file in bounded memory
+     * </pre>
      *
-     * @param mapper Function to apply to the item
-     * @param item Item to process
-     * @return Future that resolves to the result of the function
-     * @throws IllegalArgumentException if mapper is null
+     * @param tasks Tasks that may be in flight at the same time
+     * @return Stream running its parallel stages with the window
+     * @throws IllegalArgumentException if tasks is not positive
      */
-    private <U> AbstractStreamFuture<U> execute(Function<T, U> mapper, T item) {
-        if (mapper == null) {
-            throw new IllegalArgumentException("Mapper cannot be null");
+    public Stream<T> maxInFlight(int tasks) {
+        if (tasks <= 0) {
+            throw new IllegalArgumentException("Tasks must be positive");
         }
-        if (!isParallel) {
-            return new SimpleFuture<>(mapper.apply(item));
-        } else
-            return new ParallelFuture<>(Objects.requireNonNullElse(userProvidedExecutorService, executorService)
-                    .submit(() -> mapper.apply(item)));
+        return new Stream<>(source, transformPipelines, isParallel, isUnordered, userProvidedExecutorService, tasks, metrics);
     }
 
     /**
-     * Executes a consumer against an item in the stream
+     * Measures every stage of the terminal operations of the stream
+     * <p>
+     * Each terminal operation records, per stage of its optimized plan, the elements going in and out, the wall time
+     * spent in the stage itself and, for parallel stages, how many tasks were waiting in the executor. CPU time and
+     * allocations are recorded too when the metrics ask for them. The measurements are published to the metrics once
+     * the terminal operation returns, see {@link PipelineMetrics}. A stream that is not instrumented runs its stages
+     * without any measuring code.
+     * <p>
+     * Example:
+     * <pre>
+     * PipelineMetrics metrics = new PipelineMetrics("import").registerMBean();
+     * new Stream<>(rows)
+     *     .instrument(metrics)
+     *     .parallel()
+     *     .map(this::parse)
+     *     .filter(Row::isValid)
+     *     .forEach(this::store);
+     * metrics.stages(); // Counts and times of MAP, FILTER and the stage running forEach
+     * </pre>
      *
-     * @param consumer Consumer to apply to the item
-     * @param item Item to process
-     * @return Future that resolves when the consumer has been applied
-     * @throws IllegalArgumentException if consumer is null
+     * @param metrics Receives the measurements, may be shared by several streams
+     * @return Stream measuring its terminal operations
+     * @throws IllegalArgumentException if metrics is null
      */
-    private AbstractStreamFuture<Void> execute(Consumer<T> consumer, T item) {
-        if (consumer == null) {
-            throw new IllegalArgumentException("Consumer cannot be null");
+    public Stream<T> instrument(PipelineMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics cannot be null");
         }
-        return execute((Function<T, Void>) t -> {
-            consumer.accept(item);
+        return new Stream<>(source, transformPipelines, isParallel, isUnordered, userProvidedExecutorService, maxInFlight, metrics);
+    }
+
+    /**
+     * Executes stream operations sequentially
+     * <p>
+     * Example:
+     * <pre>
+     * List<Integer> result = new Stream<>(Arrays.asList(1, 2, 3, 4))
+     *     .sequential()
+     *     .map(n -> n * 2)
+     *     .toList(); // Processes sequentially
+     * </pre>
+     *
+     * @return Stream configured for sequential execution
+     */
+    public Stream<T> sequential() {
+        return new Stream<>(source, transformPipelines, false, isUnordered, null, maxInFlight, metrics);
+    }
+
+    /**
+     * Returns the executor that stages created from this stream run on
+     *
+     * @return Executor for parallel streams, null for sequential streams
+     */
+    private ExecutorService parallelExecutor() {
+        if (!isParallel) {
             return null;
-        }, item);
+        }
+        return Objects.requireNonNullElse(userProvidedExecutorService, executorService);
     }
 
     /**
@@ -1260,12 +2417,8 @@ public class Stream<T> {
     }
 
     /**
-     * Closes the stream and releases any resources held by it
-     * This is particularly important if a user-provided executor service was used
+     * Partial result of a parallel reduction, combined from 2^level chunks
      */
-    protected void close() {
-        if (userProvidedExecutorService != null) {
-            userProvidedExecutorService.shutdown();
-        }
+    private record Partial<A>(A container, int level) {
     }
 }
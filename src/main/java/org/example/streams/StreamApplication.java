@@ -9,14 +9,14 @@ public class StreamApplication {
 
     public static void main(String[] args) {
         AtomicInteger atomicInteger = new AtomicInteger(0);
-        StreamsUtils.subscriberStream(() -> {
+        StreamsUtils.subscriberParallelStream(() -> {
                     try {
                         Thread.sleep(new Random().nextInt(100));
                         return atomicInteger.incrementAndGet();
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
                     }
-                }, 100)
+                }, 100, ExecutionBackend.VIRTUAL_THREADS)
                 .forEach(System.out::println);
 
 
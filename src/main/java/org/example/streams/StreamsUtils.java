@@ -1,7 +1,18 @@
 package org.example.streams;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class StreamsUtils {
 
@@ -19,15 +30,14 @@ public class StreamsUtils {
         return new Stream<>(Arrays.asList(objects));
     }
 
+    /**
+     * Boxes every value when it is pulled, see {@link #intStream(int[])} for a stream of primitive values
+     */
     public static Stream<Integer> stream(int[] objects) {
         if (objects == null) {
             throw new IllegalArgumentException("Array cannot be null");
         }
-        List<Integer> objectList = new ArrayList<>(objects.length);
-        for (int object : objects) {
-            objectList.add(object);
-        }
-        return stream(objectList);
+        return Stream.fromSource(() -> Arrays.spliterator(objects));
     }
 
     public static Stream<Integer> intStream(int endExclusive) {
@@ -37,15 +47,14 @@ public class StreamsUtils {
         return intRangeStream(0, endExclusive);
     }
 
+    /**
+     * Boxes every value when it is pulled, see {@link #intRange(int, int)} for a stream of primitive values
+     */
     public static Stream<Integer> intRangeStream(int startInclusive, int endExclusive) {
         if (startInclusive >= endExclusive) {
             throw new IllegalArgumentException("Start must be less than end");
         }
-        List<Integer> rangeList = new ArrayList<>(endExclusive - startInclusive);
-        for (int i = startInclusive; i < endExclusive; i++) {
-            rangeList.add(i);
-        }
-        return stream(rangeList);
+        return Stream.fromSource(() -> new RangeSpliterator<>(startInclusive, endExclusive, i -> (int) i));
     }
 
     public static Stream<Long> longStream(int endExclusive) {
@@ -55,15 +64,14 @@ public class StreamsUtils {
         return longRangeStream(0, endExclusive);
     }
 
+    /**
+     * Boxes every value when it is pulled, see {@link #longRange(long, long)} for a stream of primitive values
+     */
     public static Stream<Long> longRangeStream(int startInclusive, int endExclusive) {
         if (startInclusive >= endExclusive) {
             throw new IllegalArgumentException("Start must be less than end");
         }
-        List<Long> rangeList = new ArrayList<>(endExclusive - startInclusive);
-        for (long i = startInclusive; i < endExclusive; i++) {
-            rangeList.add(i);
-        }
-        return stream(rangeList);
+        return Stream.fromSource(() -> new RangeSpliterator<>(startInclusive, endExclusive, i -> i));
     }
 
     public static <T> Stream<T> subscriberStream(Supplier<T> supplier, int size) {
@@ -84,26 +92,84 @@ public class StreamsUtils {
                 .sequential();
     }
 
+    /**
+     * Calls the supplier the given number of times in parallel on the backend, a blocking supplier should run on
+     * {@link ExecutionBackend#VIRTUAL_THREADS}
+     */
+    public static <T> Stream<T> subscriberParallelStream(Supplier<T> supplier, int size, ExecutionBackend backend) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Consumer cannot be null");
+        }
+        return intStream(size)
+                .parallel(backend)
+                .map(i -> supplier.get())
+                .sequential();
+    }
+
+    /**
+     * Boxes every value when it is pulled, see {@link #longStream(long[])} for a stream of primitive values
+     */
     public static Stream<Long> stream(long[] objects) {
         if (objects == null) {
             throw new IllegalArgumentException("Array cannot be null");
         }
-        List<Long> objectList = new ArrayList<>(objects.length);
-        for (long object : objects) {
-            objectList.add(object);
-        }
-        return stream(objectList);
+        return Stream.fromSource(() -> Arrays.spliterator(objects));
     }
 
+    /**
+     * Boxes every value when it is pulled, see {@link #doubleStream(double[])} for a stream of primitive values
+     */
     public static Stream<Double> stream(double[] objects) {
         if (objects == null) {
             throw new IllegalArgumentException("Array cannot be null");
         }
-        List<Double> objectList = new ArrayList<>(objects.length);
-        for (double object : objects) {
-            objectList.add(object);
-        }
-        return stream(objectList);
+        return Stream.fromSource(() -> Arrays.spliterator(objects));
+    }
+
+    /**
+     * Creates a stream of the primitive values, nothing is boxed until the stream is turned into a {@link Stream}
+     * @param values The source values, not copied
+     * @return Primitive stream over the values
+     * @throws IllegalArgumentException if values is null
+     */
+    public static IntStream intStream(int[] values) {
+        return IntStream.of(values);
+    }
+
+    /**
+     * Creates a stream of the primitive values, nothing is boxed until the stream is turned into a {@link Stream}
+     * @param values The source values, not copied
+     * @return Primitive stream over the values
+     * @throws IllegalArgumentException if values is null
+     */
+    public static LongStream longStream(long[] values) {
+        return LongStream.of(values);
+    }
+
+    /**
+     * Creates a stream of the primitive values, nothing is boxed until the stream is turned into a {@link Stream}
+     * @param values The source values, not copied
+     * @return Primitive stream over the values
+     * @throws IllegalArgumentException if values is null
+     */
+    public static DoubleStream doubleStream(double[] values) {
+        return DoubleStream.of(values);
+    }
+
+    /**
+     * Creates a primitive stream of the values from startInclusive to endExclusive, computed on demand
+     * @return Stream of the range, empty if endExclusive is not greater than startInclusive
+     */
+    public static IntStream intRange(int startInclusive, int endExclusive) {
+        return IntStream.range(startInclusive, endExclusive);
+    }
+
+    /**
+     * Creates a primitive stream of the values from startInclusive to endExclusive, computed on demand
+     * @return Stream of the range, empty if endExclusive is not greater than startInclusive
+     */
+    public static LongStream longRange(long startInclusive, long endExclusive) {
+        return LongStream.range(startInclusive, endExclusive);
     }
 
     public static Stream<Boolean> stream(boolean[] objects) {
@@ -128,6 +194,187 @@ public class StreamsUtils {
         return new Stream<>(pairs);
     }
 
+    /**
+     * Creates a single-use stream that pulls its elements from the iterator on demand
+     * @param iterator The source iterator
+     * @return Stream over the remaining elements of the iterator
+     */
+    public static <T> Stream<T> stream(Iterator<T> iterator) {
+        if (iterator == null) {
+            throw new IllegalArgumentException("Iterator cannot be null");
+        }
+        return Stream.fromSource(() -> Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED));
+    }
+
+    /**
+     * Creates a stream that pulls its elements from a new iterator of the iterable for every terminal operation
+     * @param iterable The source iterable
+     * @return Stream over the elements of the iterable
+     */
+    public static <T> Stream<T> stream(Iterable<T> iterable) {
+        if (iterable == null) {
+            throw new IllegalArgumentException("Iterable cannot be null");
+        }
+        return Stream.fromSource(iterable::spliterator);
+    }
+
+    /**
+     * Creates a single-use stream over the elements of a JDK stream, pulled from its spliterator on demand without copying
+     * <p>
+     * Example:
+     * <pre>
+     * List<String> upper = StreamsUtils.stream(java.util.stream.Stream.of("a", "b"))
+     *     .map(String::toUpperCase)
+     *     .toList(); // Returns ["A", "B"]
+     * </pre>
+     *
+     * @param stream The source JDK stream
+     * @return Stream over the elements of the JDK stream
+     */
+    public static <T> Stream<T> stream(java.util.stream.Stream<T> stream) {
+        if (stream == null) {
+            throw new IllegalArgumentException("Stream cannot be null");
+        }
+        return Stream.fromSource(stream::spliterator);
+    }
+
+    /**
+     * Creates an infinite stream of seed, next(seed), next(next(seed)), ... computed on demand
+     * <p>
+     * Example:
+     * <pre>
+     * List<Integer> powers = StreamsUtils.iterate(1, n -> n * 2)
+     *     .limit(5)
+     *     .toList(); // Returns [1, 2, 4, 8, 16]
+     * </pre>
+     *
+     * @param seed The first element
+     * @param next Function computing an element from the previous one
+     * @return Infinite stream, to be bounded by a short-circuiting operation
+     */
+    public static <T> Stream<T> iterate(T seed, UnaryOperator<T> next) {
+        if (next == null) {
+            throw new IllegalArgumentException("Next function cannot be null");
+        }
+        return Stream.fromSource(() -> new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            private T current;
+            private boolean started;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                current = started ? next.apply(current) : seed;
+                started = true;
+                action.accept(current);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Creates an infinite stream whose elements are produced by the supplier on demand
+     * @param supplier Produces each element
+     * @return Infinite stream, to be bounded by a short-circuiting operation
+     */
+    public static <T> Stream<T> generate(Supplier<T> supplier) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Supplier cannot be null");
+        }
+        return Stream.fromSource(() -> new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                action.accept(supplier.get());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Creates a stream over the lines of a UTF-8 file, see {@link #lines(Path, Charset)}
+     * @param path File to read
+     * @return Stream of the lines of the file
+     */
+    public static Stream<String> lines(Path path) {
+        return lines(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a stream over the lines of a file, read through a buffered file channel for every terminal operation
+     * <p>
+     * Parallel streams split the file into byte ranges that are read concurrently, instead of reading it into a list first.
+     * The file is closed once the terminal operation is done.
+     * <p>
+     * Example:
+     * <pre>
+     * long errors = StreamsUtils.lines(Path.of("access.log"), StandardCharsets.UTF_8)
+     *     .parallel()
+     *     .filter(line -> line.contains("ERROR"))
+     *     .count();
+     * </pre>
+     *
+     * @param path File to read
+     * @param charset Charset of the file, encoding a line break as the single byte {@code \n} like UTF-8 or ISO-8859-1
+     * @return Stream of the lines of the file
+     * @throws IllegalArgumentException if path or charset is null, or the charset encodes a line break in more than one byte
+     */
+    public static Stream<String> lines(Path path, Charset charset) {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        if (charset == null) {
+            throw new IllegalArgumentException("Charset cannot be null");
+        }
+        if (!LineSpliterator.isSupported(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " does not encode a line break as a single byte");
+        }
+        return Stream.fromSource(() -> new LineSpliterator(path, charset));
+    }
+
+    /**
+     * Creates a stream over the fixed-width records of a binary file, mapped into memory for every terminal operation
+     * <p>
+     * Each element is a read-only view of one record in the mapped file, nothing is copied onto the heap until
+     * a stage reads from the view. Parallel streams split the file into regions of whole records.
+     * A partial record at the end of the file is ignored. Views use big-endian byte order unless changed with
+     * {@link ByteBuffer#order(java.nio.ByteOrder)}.
+     * <p>
+     * Example:
+     * <pre>
+     * long total = StreamsUtils.records(Path.of("trades.bin"), 16)
+     *     .map(record -> record.getLong(8))
+     *     .reduce(Long::sum, 0L);
+     * </pre>
+     *
+     * @param path File to map
+     * @param recordSize Size of one record in bytes
+     * @return Stream of record views
+     * @throws IllegalArgumentException if path is null or recordSize is not positive
+     */
+    public static Stream<ByteBuffer> records(Path path, int recordSize) {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        if (recordSize <= 0) {
+            throw new IllegalArgumentException("Record size must be positive");
+        }
+        return Stream.fromSource(() -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // a mapping holds at most Integer.MAX_VALUE bytes, so large files are mapped in segments of whole records
+                long count = channel.size() / recordSize;
+                long recordsPerSegment = Integer.MAX_VALUE / recordSize;
+                MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((count + recordsPerSegment - 1) / recordsPerSegment)];
+                for (int i = 0; i < segments.length; i++) {
+                    long first = i * recordsPerSegment;
+                    long records = Math.min(recordsPerSegment, count - first);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * recordSize, records * recordSize);
+                }
+                return new RangeSpliterator<ByteBuffer>(0, count, index -> segments[(int) (index / recordsPerSegment)]
+                        .slice((int) (index % recordsPerSegment) * recordSize, recordSize));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error while mapping " + path, e);
+            }
+        });
+    }
+
     public static <T> Stream<Stream.Pair<Long, T>> iteratorStream(Collection<T> collection) {
         if (collection == null) {
             throw new IllegalArgumentException("Collection cannot be null");
@@ -0,0 +1,16 @@
+package org.example.streams;
+
+/**
+ * The last sink of a pipeline, which folds the elements it receives into the result of a terminal operation
+ *
+ * @param <IN> The type of elements accepted by the sink
+ * @param <OUT> The type of the result
+ */
+public interface TerminalSink<IN, OUT> extends Sink<IN> {
+
+    /**
+     * Returns the result once all elements have been pushed
+     * @return Result of the terminal operation
+     */
+    OUT result();
+}
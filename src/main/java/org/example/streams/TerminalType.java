@@ -0,0 +1,27 @@
+package org.example.streams;
+
+/**
+ * What a terminal operation depends on, used to decide which stages can be dropped before it runs
+ */
+public enum TerminalType {
+    /** Result depends on the order and the number of the elements, e.g. toList or reduce */
+    ORDERED,
+    /** Result ignores the order of the elements, e.g. count, sum or anyMatch */
+    UNORDERED,
+    /** Result ignores duplicates of the elements, e.g. toSet; the order still matters for sets keeping insertion order */
+    SET;
+
+    /**
+     * Returns true if the terminal operation gives the same result for any order of its input
+     */
+    public boolean ignoresOrder() {
+        return this == UNORDERED;
+    }
+
+    /**
+     * Returns true if the terminal operation gives the same result when duplicates are removed from its input
+     */
+    public boolean ignoresDuplicates() {
+        return this == SET;
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.streams;
+
+import org.example.streams.Stream.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sink that keeps only the first or last k elements of the sorted order of its input in a bounded heap,
+ * and emits them in sorted order once the input ends.
+ * <p>
+ * Replaces a full sort followed by a limit, so only k elements are held and every element costs O(log k).
+ * Equal elements keep their encounter order, matching the stable sort it replaces.
+ *
+ * @param <T> The type of elements
+ */
+public class TopKSink<T> extends ChainedSink<T, T> {
+
+    private final Comparator<? super T> elementOrder;
+    private final Comparator<Pair<Long, T>> order;
+    private final int k;
+    private final boolean last;
+
+    /** Root is the kept element that is dropped first when a better one arrives */
+    private final PriorityQueue<Pair<Long, T>> heap;
+    private long index = 0L;
+
+    /**
+     * @param downstream Sink receiving the kept elements in sorted order
+     * @param comparator Sort order, null for natural order
+     * @param k Number of elements to keep
+     * @param last true to keep the last k elements of the sorted order instead of the first k
+     */
+    @SuppressWarnings("unchecked")
+    public TopKSink(Sink<T> downstream, Comparator<? super T> comparator, int k, boolean last) {
+        super(downstream);
+        this.elementOrder = comparator != null ? comparator : (Comparator<? super T>) Comparator.naturalOrder();
+        Comparator<Pair<Long, T>> order = (a, b) -> elementOrder.compare(a.value(), b.value());
+        this.order = order.thenComparing(Pair::key);
+        this.k = k;
+        this.last = last;
+        this.heap = new PriorityQueue<>(Math.min(k, 1024) + 1, last ? this.order : this.order.reversed());
+    }
+
+    @Override
+    public void begin(long size) {
+    }
+
+    @Override
+    public void accept(T item) {
+        long position = index++;
+        if (heap.size() < k) {
+            heap.add(new Pair<>(position, item));
+            return;
+        }
+        // the new element comes after every kept one, so on a tie it sorts after the root
+        int comparison = elementOrder.compare(item, heap.peek().value());
+        if (last ? comparison >= 0 : comparison < 0) {
+            heap.poll();
+            heap.add(new Pair<>(position, item));
+        }
+    }
+
+    @Override
+    public boolean cancellationRequested() {
+        return false; // every element is needed before the first one can be emitted
+    }
+
+    @Override
+    public void end() {
+        List<Pair<Long, T>> kept = new ArrayList<>(heap);
+        heap.clear();
+        kept.sort(order);
+        downstream.begin(kept.size());
+        for (Pair<Long, T> entry : kept) {
+            if (downstream.cancellationRequested()) {
+                break;
+            }
+            downstream.accept(entry.value());
+        }
+        downstream.end();
+    }
+}
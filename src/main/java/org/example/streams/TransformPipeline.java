@@ -1,12 +1,231 @@
 package org.example.streams;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
-public record TransformPipeline<IN, OUT>(Function<Collection<IN>, Collection<OUT>> function) {
+/**
+ * A single intermediate operation of a stream
+ *
+ * @param type Kind of the operation
+ * @param argument Argument the operation was created with (predicate, mapper, comparator, count), null if it has none
+ * @param function Wraps the downstream sink with the sink of this operation
+ * @param executorService Executor the stage runs on when it is parallel, null for sequential stages
+ */
+public record TransformPipeline<IN, OUT>(StageType type, Object argument, Function<Sink<OUT>, Sink<IN>> function,
+                                         ExecutorService executorService) {
+
+    public TransformPipeline(StageType type, Object argument, Function<Sink<OUT>, Sink<IN>> function) {
+        this(type, argument, function, null);
+    }
+
+    /**
+     * Function of a stage whose sinks share state that belongs to one run, like the hash table of a join. Every run
+     * calls {@link #forRun()} once before creating any sink, so all sinks of a run, one per chunk in parallel mode,
+     * share the state while concurrent runs each get their own.
+     */
+    @FunctionalInterface
+    public interface PerRun<IN, OUT> extends Function<Sink<OUT>, Sink<IN>> {
+
+        /**
+         * Prepares the state of a run
+         * @return Creates the sinks of the run
+         */
+        Function<Sink<OUT>, Sink<IN>> forRun();
+
+        /**
+         * Creates a sink with state of its own, for callers that do not prepare runs
+         */
+        @Override
+        default Sink<IN> apply(Sink<OUT> downstream) {
+            return forRun().apply(downstream);
+        }
+    }
+
+    /**
+     * Creates a stage passing on only the elements matching the predicate
+     * @param predicate Condition to test elements against
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @return Filter stage
+     */
+    public static <T> TransformPipeline<T, T> filter(Predicate<T> predicate, ExecutorService executorService) {
+        return new TransformPipeline<>(StageType.FILTER, predicate, downstream -> new ChainedSink<T, T>(downstream) {
+            @Override
+            public void accept(T item) {
+                if (predicate.test(item)) {
+                    downstream.accept(item);
+                }
+            }
+        }, executorService);
+    }
+
+    /**
+     * Creates a stage passing on every element transformed by the mapper
+     * @param mapper Function to transform elements
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @return Map stage
+     */
+    public static <T, U> TransformPipeline<T, U> map(Function<T, U> mapper, ExecutorService executorService) {
+        return new TransformPipeline<>(StageType.MAP, mapper, downstream -> new ChainedSink<T, U>(downstream) {
+            @Override
+            public void begin(long size) {
+                downstream.begin(size);
+            }
+
+            @Override
+            public void accept(T item) {
+                downstream.accept(mapper.apply(item));
+            }
+        }, executorService);
+    }
+
+    /**
+     * Creates a stage passing on every element after applying the consumer to it
+     * @param consumer Consumer to apply to each element
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @return Peek stage
+     */
+    public static <T> TransformPipeline<T, T> peek(Consumer<T> consumer, ExecutorService executorService) {
+        return new TransformPipeline<>(StageType.PEEK, consumer, downstream -> new ChainedSink<T, T>(downstream) {
+            @Override
+            public void begin(long size) {
+                downstream.begin(size);
+            }
+
+            @Override
+            public void accept(T item) {
+                consumer.accept(item);
+                downstream.accept(item);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Creates a sequential stage dropping the first elements
+     * @param count Number of elements to drop
+     * @return Skip stage
+     */
+    public static <T> TransformPipeline<T, T> skip(int count) {
+        return new TransformPipeline<>(StageType.SKIP, count, downstream -> new ChainedSink<T, T>(downstream) {
+            private int skipped = 0;
+
+            @Override
+            public void accept(T item) {
+                if (skipped >= count) {
+                    downstream.accept(item);
+                } else {
+                    skipped++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a sequential stage passing on only the first elements, then requesting cancellation
+     * @param count Number of elements to pass on
+     * @return Limit stage
+     */
+    public static <T> TransformPipeline<T, T> limit(int count) {
+        return new TransformPipeline<>(StageType.LIMIT, count, downstream -> new ChainedSink<T, T>(downstream) {
+            private int passed = 0;
+
+            @Override
+            public void accept(T item) {
+                if (passed < count) {
+                    passed++;
+                    downstream.accept(item);
+                }
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return passed >= count || downstream.cancellationRequested();
+            }
+        });
+    }
+
+    /**
+     * Creates a stage keeping the first or last k elements of the sorted order in a bounded heap
+     * @param comparator Sort order, null for natural order
+     * @param k Number of elements to keep
+     * @param last true to keep the last k elements instead of the first k
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @return Top-k stage
+     */
+    public static <T> TransformPipeline<T, T> topK(Comparator<T> comparator, int k, boolean last, ExecutorService executorService) {
+        return new TransformPipeline<>(last ? StageType.LAST_K : StageType.TOP_K, k,
+                downstream -> new TopKSink<>(downstream, comparator, k, last), executorService);
+    }
+
+    /**
+     * Returns the same operation with its input, output and time measured
+     * @param metrics Receives the measurements
+     * @return Measuring stage
+     */
+    public TransformPipeline<IN, OUT> instrumented(StageMetrics metrics) {
+        if (function instanceof PerRun<IN, OUT> perRun) {
+            PerRun<IN, OUT> measured = () -> {
+                Function<Sink<OUT>, Sink<IN>> run = perRun.forRun();
+                return downstream -> metrics.measure(run, downstream);
+            };
+            return new TransformPipeline<>(type, argument, measured, executorService);
+        }
+        return new TransformPipeline<>(type, argument, downstream -> metrics.measure(function, downstream), executorService);
+    }
+
+    /**
+     * Returns the stages a run creates its sinks from, with the state of every {@link PerRun} stage prepared
+     * @param transformPipelines Stages as planned
+     * @return The same list if no stage has state per run, a copy with the prepared stages otherwise
+     */
+    public static List<TransformPipeline<?, ?>> forRun(List<TransformPipeline<?, ?>> transformPipelines) {
+        List<TransformPipeline<?, ?>> prepared = transformPipelines;
+        for (int i = 0; i < transformPipelines.size(); i++) {
+            TransformPipeline<?, ?> stage = transformPipelines.get(i).prepare();
+            if (stage != transformPipelines.get(i)) {
+                if (prepared == transformPipelines) {
+                    prepared = new ArrayList<>(transformPipelines);
+                }
+                prepared.set(i, stage);
+            }
+        }
+        return prepared;
+    }
+
+    private TransformPipeline<IN, OUT> prepare() {
+        if (function instanceof PerRun<IN, OUT> perRun) {
+            return new TransformPipeline<>(type, argument, perRun.forRun(), executorService);
+        }
+        return this;
+    }
+
+    public boolean isParallel() {
+        return executorService != null;
+    }
 
     @SuppressWarnings("unchecked")
-    public Collection<OUT> apply(Collection<?> collection) {
-        return function.apply((Collection<IN>) collection);
+    public Sink<IN> wrap(Sink<?> downstream) {
+        return function.apply((Sink<OUT>) downstream);
+    }
+
+    /**
+     * Returns the same operation running on another executor
+     * @param executorService Executor of the stage, null for a sequential stage
+     * @return Stage with the executor replaced
+     */
+    public TransformPipeline<IN, OUT> withExecutor(ExecutorService executorService) {
+        return new TransformPipeline<>(type, argument, function, executorService);
+    }
+
+    /**
+     * Describes the stage for a query plan, e.g. {@code LIMIT(3)} or {@code MAP parallel}
+     */
+    @Override
+    public String toString() {
+        return type + (argument instanceof Number ? "(" + argument + ")" : "") + (isParallel() ? " parallel" : "");
     }
 }
@@ -0,0 +1,58 @@
+package org.example.streams;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator combining the elements of two spliterators pairwise, ending with the shorter one.
+ * <p>
+ * Both sides are advanced in lockstep, so neither is buffered. Splitting takes a batch of combined elements,
+ * which lets a parallel stream run its stages on the batches while the sides are read one element at a time.
+ *
+ * @param <A> The type of elements of the left side
+ * @param <B> The type of elements of the right side
+ * @param <R> The type of the combined elements
+ */
+public class ZipSpliterator<A, B, R> extends Spliterators.AbstractSpliterator<R> implements AutoCloseable {
+
+    private final Spliterator<A> left;
+    private final Spliterator<B> right;
+    private final BiFunction<A, B, R> combiner;
+    private A leftItem;
+    private B rightItem;
+
+    /**
+     * @param left Left side
+     * @param right Right side
+     * @param combiner Combines an element of each side
+     */
+    public ZipSpliterator(Spliterator<A> left, Spliterator<B> right, BiFunction<A, B, R> combiner) {
+        super(Math.min(left.estimateSize(), right.estimateSize()), Spliterator.ORDERED);
+        this.left = left;
+        this.right = right;
+        this.combiner = combiner;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (!left.tryAdvance(item -> leftItem = item) || !right.tryAdvance(item -> rightItem = item)) {
+            return false;
+        }
+        R combined = combiner.apply(leftItem, rightItem);
+        leftItem = null;
+        rightItem = null;
+        action.accept(combined);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            ReducePipeline.close(left);
+        } finally {
+            ReducePipeline.close(right);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.rate.limiter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TokenBucketRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void testFullBucketHandsOutWholeBurst() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(3, TimeUnit.SECONDS, 5, clock::get);
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+
+        // 7 per second does not divide a second evenly, one permit at a time must still empty a full bucket
+        TokenBucketRateLimiter uneven = new TokenBucketRateLimiter(7, TimeUnit.SECONDS, 7, clock::get);
+        for (int i = 0; i < 7; i++) {
+            assertTrue(uneven.tryAcquire());
+        }
+        assertFalse(uneven.tryAcquire());
+        assertFalse(new TokenBucketRateLimiter(3, TimeUnit.SECONDS, 5, clock::get).tryAcquire(6));
+    }
+
+    @Test
+    public void testFractionalRates() {
+        for (TokenBucketRateLimiter limiter : List.of(
+                new TokenBucketRateLimiter(0.3, TimeUnit.SECONDS, 1, clock::get),
+                new TokenBucketRateLimiter(3, TimeUnit.MILLISECONDS, 1, clock::get),
+                new TokenBucketRateLimiter(0.3, TimeUnit.MILLISECONDS, 1, clock::get))) {
+            assertEquals(1.0, limiter.availableTokens(), 1e-9);
+            assertTrue(limiter.tryAcquire());
+            assertFalse(limiter.tryAcquire());
+        }
+
+        TokenBucketRateLimiter halfPerSecond = new TokenBucketRateLimiter(0.5, TimeUnit.SECONDS, 1, clock::get);
+        assertTrue(halfPerSecond.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_999));
+        assertFalse(halfPerSecond.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(halfPerSecond.tryAcquire());
+    }
+
+    @Test
+    public void testAcquiringSeveralPermitsAndRefillingOverTime() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, TimeUnit.SECONDS, 10, clock::get);
+        assertTrue(limiter.tryAcquire(7));
+        assertFalse(limiter.tryAcquire(4));
+        assertTrue(limiter.tryAcquire(3));
+        assertEquals(0.0, limiter.availableTokens(), 1e-9);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(2.5, limiter.availableTokens(), 1e-9);
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(limiter.tryAcquire());
+
+        // an idle bucket never holds more than its size
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+        assertEquals(10.0, limiter.availableTokens(), 1e-9);
+        assertTrue(limiter.tryAcquire(10));
+        assertFalse(limiter.tryAcquire());
+
+        assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire(0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(0, TimeUnit.SECONDS, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(1, TimeUnit.SECONDS, 0));
+    }
+
+    @Test
+    public void testTinyRatesDoNotOverflow() {
+        // a full bucket would take far longer to refill than a long can count in nanoseconds
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1e-18, TimeUnit.NANOSECONDS, 1_000, clock::get);
+        assertTrue(limiter.tryAcquire(1_000));
+        assertFalse(limiter.tryAcquire());
+        clock.addAndGet(TimeUnit.DAYS.toNanos(365));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testConcurrentCallersNeverTakeMoreThanTheBucket() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, TimeUnit.HOURS, 1_000, clock::get);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> granted = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                granted.add(callers.submit(() -> {
+                    int count = 0;
+                    for (int j = 0; j < 500; j++) {
+                        if (limiter.tryAcquire()) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : granted) {
+                total += future.get();
+            }
+            assertEquals(1_000, total);
+        } finally {
+            callers.shutdown();
+        }
+    }
+}
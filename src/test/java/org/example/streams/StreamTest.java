@@ -1,14 +1,30 @@
 package org.example.streams;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
 
@@ -17,12 +33,20 @@ public class StreamTest {
     private List<Integer> numbers;
     private List<String> strings;
     private ExecutorService executor;
+    private ForkJoinPool forkJoinPool;
 
     @Before
     public void setUp() {
         numbers = Arrays.asList(1, 2, 3, 4, 5, 2, 3);
         strings = Arrays.asList("apple", "banana", "cherry", "date");
         executor = Executors.newFixedThreadPool(2);
+        forkJoinPool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        forkJoinPool.shutdownNow();
     }
 
     @Test
@@ -315,4 +339,1136 @@ public class StreamTest {
             assertEquals(numbers.get(i % numbers.size()), iterated.get(i).value());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStagesAreFusedIntoSinglePass() {
+        List<String> trace = new ArrayList<>();
+        List<Integer> result = new Stream<>(Arrays.asList(1, 2, 3))
+                .peek(n -> trace.add("a" + n))
+                .map(n -> n * 10)
+                .peek(n -> trace.add("b" + n))
+                .toList();
+        assertEquals(Arrays.asList(10, 20, 30), result);
+        assertEquals(Arrays.asList("a1", "b10", "a2", "b20", "a3", "b30"), trace);
+    }
+
+    @Test
+    public void testSkipLastAndLastOperation() {
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), new Stream<>(numbers).skipLast(2).toList());
+        assertEquals(Arrays.asList(5, 2, 3), new Stream<>(numbers).last(3).toList());
+    }
+
+    @Test
+    public void testLimitShortCircuitsUpstreamStages() {
+        List<Integer> mapped = new ArrayList<>();
+        List<Integer> result = new Stream<>(numbers)
+                .peek(mapped::add)
+                .filter(n -> n > 1)
+                .limit(2)
+                .toList();
+        assertEquals(Arrays.asList(2, 3), result);
+        assertEquals(Arrays.asList(1, 2, 3), mapped);
+    }
+
+    @Test
+    public void testMatchOperationsShortCircuit() {
+        List<Integer> tested = new ArrayList<>();
+        assertTrue(new Stream<>(numbers).peek(tested::add).anyMatch(n -> n == 2));
+        assertEquals(Arrays.asList(1, 2), tested);
+
+        tested.clear();
+        assertFalse(new Stream<>(numbers).peek(tested::add).allMatch(n -> n < 3));
+        assertEquals(Arrays.asList(1, 2, 3), tested);
+
+        tested.clear();
+        assertEquals(Optional.of(4), new Stream<>(numbers).peek(tested::add).find(n -> n > 3));
+        assertEquals(Arrays.asList(1, 2, 3, 4), tested);
+    }
+
+    @Test
+    public void testParallelFindReturnsFirstMatch() {
+        Optional<Integer> first = new Stream<>(numbers)
+                .parallel(executor)
+                .find(n -> n > 2);
+        assertEquals(Optional.of(3), first);
+    }
+
+    @Test
+    public void testParallelChunkedMapPreservesOrder() {
+        List<Integer> source = StreamsUtils.intStream(100_000).toList();
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        List<Integer> result = new Stream<>(source)
+                .parallel()
+                .peek(n -> threads.add(Thread.currentThread().getName()))
+                .map(n -> n * 2)
+                .filter(n -> n % 3 == 0)
+                .toList();
+        assertEquals(source.stream().map(n -> n * 2).filter(n -> n % 3 == 0).toList(), result);
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testParallelStageAfterSequentialStage() {
+        List<Integer> result = new Stream<>(numbers)
+                .filter(n -> n > 1)
+                .parallel(executor)
+                .map(n -> n * 10)
+                .toList();
+        assertEquals(Arrays.asList(20, 30, 40, 50, 20, 30), result);
+    }
+
+    @Test
+    public void testParallelLimitStopsSplittingSource() {
+        AtomicInteger mapped = new AtomicInteger();
+        List<Integer> result = new Stream<>(StreamsUtils.intStream(1_000_000).toList())
+                .parallel()
+                .peek(n -> mapped.incrementAndGet())
+                .sequential()
+                .limit(5)
+                .toList();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), result);
+        assertTrue(mapped.get() < 1_000_000);
+    }
+
+    @Test
+    public void testIntStreamOperations() {
+        IntStream stream = IntStream.of(5, 3, 8, 1, 9, 2)
+                .filter(n -> n > 1)
+                .map(n -> n * 2);
+        assertEquals(54, stream.sum());
+        assertEquals(OptionalInt.of(4), stream.min());
+        assertEquals(OptionalInt.of(18), stream.max());
+        assertEquals(10.8, stream.average(), 0.000001);
+        assertArrayEquals(new int[]{4, 6, 10}, stream.sorted().limit(3).toArray());
+        assertEquals(Arrays.asList(10, 6, 16, 18, 4), stream.boxed().toList());
+        assertEquals(45, IntStream.range(0, 10).summaryStatistics().getSum());
+        assertTrue(IntStream.range(0, 10).anyMatch(n -> n == 9));
+        assertEquals(0.0, IntStream.of().average(), 0.0);
+    }
+
+    @Test
+    public void testLongAndDoubleStreamOperations() {
+        assertEquals(4950L, LongStream.range(0, 100).sum());
+        assertEquals(Arrays.asList("0", "1", "2"), LongStream.range(0, 3).mapToObj(String::valueOf).toList());
+        assertEquals(OptionalLong.empty(), LongStream.of().max());
+        DoubleSummaryStatistics statistics = DoubleStream.of(1.5, 2.5, 3.0)
+                .map(d -> d * 2)
+                .summaryStatistics();
+        assertEquals(3, statistics.getCount());
+        assertEquals(14.0, statistics.getSum(), 0.000001);
+        assertEquals(6.0, statistics.getMax(), 0.000001);
+        assertTrue(DoubleStream.of(1.0, 2.0).allMatch(d -> d > 0));
+    }
+
+    @Test
+    public void testStreamsUtilsPrimitiveFactories() {
+        assertEquals(6L, StreamsUtils.intStream(new int[]{1, 2, 3}).sum());
+        assertArrayEquals(new long[]{2, 4}, StreamsUtils.longStream(new long[]{1, 2}).map(n -> n * 2).toArray());
+        assertEquals(2.0, StreamsUtils.doubleStream(new double[]{1.0, 3.0}).average(), 0.0);
+        assertEquals(4950L, StreamsUtils.intRange(0, 100).sum());
+        assertEquals(0, StreamsUtils.intRange(5, 5).count());
+        assertEquals(OptionalLong.of(Long.MAX_VALUE - 1), StreamsUtils.longRange(Long.MAX_VALUE - 3, Long.MAX_VALUE).max());
+        assertThrows(IllegalArgumentException.class, () -> StreamsUtils.intStream((int[]) null));
+    }
+
+    @Test
+    public void testBoxedPullsPrimitiveValuesOnDemand() {
+        AtomicInteger pushed = new AtomicInteger();
+        List<Integer> firstFive = IntStream.range(0, Integer.MAX_VALUE)
+                .peek(n -> pushed.incrementAndGet())
+                .boxed()
+                .limit(5)
+                .toList();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), firstFive);
+        assertTrue(pushed.get() < 100);
+        assertEquals(Optional.of(42L), LongStream.range(0, Long.MAX_VALUE).boxed().find(n -> n >= 42));
+        assertEquals(Arrays.asList(1.0, 2.0), DoubleStream.of(3.0, 1.0, 2.0).sorted().limit(2).boxed().toList());
+        assertEquals(Arrays.asList("1", null), IntStream.of(1, 2).mapToObj(n -> n == 1 ? "1" : null).toList());
+    }
+
+    @Test
+    public void testLazyRangeWithLimitUsesConstantMemory() {
+        List<Integer> result = StreamsUtils.intStream(1_000_000_000)
+                .filter(n -> n % 7 == 0)
+                .limit(3)
+                .toList();
+        assertEquals(Arrays.asList(0, 7, 14), result);
+        assertEquals(3, IntStream.range(0, Integer.MAX_VALUE).limit(3).count());
+    }
+
+    @Test
+    public void testIterateAndGenerateSources() {
+        assertEquals(Arrays.asList(1, 2, 4, 8, 16), StreamsUtils.iterate(1, n -> n * 2).limit(5).toList());
+        AtomicInteger counter = new AtomicInteger();
+        assertEquals(Arrays.asList(1, 2, 3), StreamsUtils.generate(counter::incrementAndGet).limit(3).toList());
+        assertEquals(3, counter.get());
+    }
+
+    @Test
+    public void testIteratorAndIterableSources() {
+        assertEquals(strings, StreamsUtils.stream(strings.iterator()).toList());
+        Iterable<String> iterable = strings::iterator;
+        assertEquals(Arrays.asList("APPLE", "BANANA"), StreamsUtils.stream(iterable).map(String::toUpperCase).limit(2).toList());
+    }
+
+    @Test
+    public void testCollectionIsReadWhenTerminalOperationRuns() {
+        List<Integer> source = new ArrayList<>(Arrays.asList(1, 2));
+        Stream<Integer> stream = new Stream<>(source);
+        source.add(3);
+        assertEquals(Arrays.asList(1, 2, 3), stream.toList());
+    }
+
+    @Test
+    public void testParallelStreamOverInfiniteSource() {
+        List<Integer> result = StreamsUtils.iterate(0, n -> n + 1)
+                .parallel()
+                .map(n -> n * 2)
+                .sequential()
+                .limit(4)
+                .toList();
+        assertEquals(Arrays.asList(0, 2, 4, 6), result);
+    }
+
+    @Test
+    public void testDistinctOnLargeInputKeepsFirstOccurrenceOrder() {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            source.add((i * 7919) % 100_000);
+        }
+        List<Integer> expected = new ArrayList<>(new LinkedHashSet<>(source));
+        assertEquals(expected, new Stream<>(source).distinct().toList());
+        assertEquals(expected, new Stream<>(source).parallel().distinct().toList());
+    }
+
+    @Test
+    public void testDistinctAfterSorted() {
+        List<Integer> distinct = new Stream<>(numbers)
+                .sorted()
+                .filter(n -> n > 1)
+                .distinct()
+                .toList();
+        assertEquals(Arrays.asList(2, 3, 4, 5), distinct);
+
+        List<String> byLength = new Stream<>(Arrays.asList("bb", "a", "cc", "bb"))
+                .sorted(Comparator.comparing(String::length))
+                .distinct()
+                .toList();
+        assertEquals(Arrays.asList("a", "bb", "cc"), byLength);
+    }
+
+    @Test
+    public void testParallelMergeSortIsStable() {
+        String[] items = new String[100_003];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = ((i * 31) % 1000) + ":" + i;
+        }
+        Comparator<String> byPrefix = Comparator.comparing(item -> Integer.parseInt(item.substring(0, item.indexOf(':'))));
+        List<String> expected = new ArrayList<>(Arrays.asList(items));
+        expected.sort(byPrefix);
+        ParallelMergeSort.sort(items, byPrefix, forkJoinPool);
+        assertEquals(expected, Arrays.asList(items));
+    }
+
+    @Test
+    public void testSortedLimitAndLastKeepStableOrder() {
+        List<String> source = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            source.add((char) ('a' + (i * 7) % 26) + String.valueOf(i));
+        }
+        Comparator<String> byLetter = Comparator.comparing(item -> item.charAt(0));
+        List<String> sorted = new ArrayList<>(source);
+        sorted.sort(byLetter);
+
+        assertEquals(sorted.subList(0, 500), new Stream<>(source).sorted(byLetter).limit(500).toList());
+        assertEquals(sorted.subList(9_500, 10_000), new Stream<>(source).sorted(byLetter).last(500).toList());
+        assertEquals(sorted.subList(0, 500), new Stream<>(source).parallel().sorted(byLetter).limit(500).toList());
+        assertEquals(sorted.subList(9_500, 10_000), new Stream<>(source).parallel(forkJoinPool).sorted(byLetter).last(500).toList());
+        assertEquals(Arrays.asList(1, 2), new Stream<>(numbers).sorted().limit(3).distinct().limit(2).toList());
+    }
+
+    @Test
+    public void testOptimizerPushesLimitThroughMapIntoTopK() {
+        AtomicInteger mapped = new AtomicInteger();
+        Stream<String> stream = new Stream<>(numbers)
+                .sorted()
+                .map(n -> {
+                    mapped.incrementAndGet();
+                    return "n" + n;
+                })
+                .limit(3);
+        assertEquals(Arrays.asList("n1", "n2", "n2"), stream.toList());
+        assertEquals(3, mapped.get());
+        assertEquals("Original plan:\n  SORTED\n  MAP\n  LIMIT(3)\nOptimized plan:\n  TOP_K(3)\n  MAP\n",
+                stream.explain(TerminalType.ORDERED));
+    }
+
+    @Test
+    public void testOptimizerMergesAndDropsStages() {
+        Stream<Integer> stream = new Stream<>(numbers)
+                .map(n -> n + 1)
+                .map(n -> n * 10)
+                .filter(n -> n > 20)
+                .filter(n -> n < 60)
+                .limit(5)
+                .limit(3);
+        assertEquals(Arrays.asList(30, 40, 50), stream.toList());
+        assertTrue(stream.explain(TerminalType.ORDERED).endsWith("Optimized plan:\n  MAP\n  FILTER\n  LIMIT(3)\n"));
+
+        Stream<Integer> sorted = new Stream<>(numbers).sorted().map(n -> n * 2);
+        assertEquals(7, sorted.count());
+        assertTrue(sorted.explain(TerminalType.UNORDERED).endsWith("Optimized plan:\n  MAP\n"));
+
+        Stream<Integer> distinct = new Stream<>(numbers).distinct();
+        assertEquals(new HashSet<>(numbers), distinct.toSet());
+        assertTrue(distinct.explain(TerminalType.SET).endsWith("Optimized plan:\n"));
+        assertTrue(distinct.explain(TerminalType.ORDERED).endsWith("Optimized plan:\n  DISTINCT\n"));
+    }
+
+    @Test
+    public void testLinesFromFileSequentialAndParallel() throws IOException {
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 100_000; i++) {
+                content.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+            }
+            content.append("x".repeat(200_000)).append("\n\nlast");
+            Files.writeString(file, content);
+            List<String> expected = Files.readAllLines(file);
+
+            assertEquals(expected, StreamsUtils.lines(file).toList());
+            assertEquals(expected, StreamsUtils.lines(file).parallel(forkJoinPool).toList());
+            assertEquals(Arrays.asList("line 0", "line 1"), StreamsUtils.lines(file).limit(2).toList());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFixedWidthRecordsFromMappedFile() throws IOException {
+        Path file = Files.createTempFile("records", ".bin");
+        try {
+            ByteBuffer records = ByteBuffer.allocate(8 * 50_000 + 3);
+            for (int i = 0; i < 50_000; i++) {
+                records.putInt(i).putInt(i * 2);
+            }
+            Files.write(file, records.array());
+
+            assertEquals(Long.valueOf(2L * 49_999 * 50_000 / 2), StreamsUtils.records(file, 8)
+                    .parallel(forkJoinPool)
+                    .map(record -> (long) record.getInt(4))
+                    .reduce(Long::sum, 0L));
+            assertEquals(Arrays.asList(0, 1, 2), StreamsUtils.records(file, 8).map(record -> record.getInt(0)).limit(3).toList());
+            assertEquals(50_000, StreamsUtils.records(file, 8).count());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCollectorsSequentialAndParallel() {
+        List<Integer> source = StreamsUtils.intStream(100_000).toList();
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int n : source) {
+            expected.merge(n % 7, 1L, Long::sum);
+        }
+        assertEquals(expected, new Stream<>(source).collect(Collectors.groupingBy(n -> n % 7, Collectors.counting())));
+        assertEquals(expected, new Stream<>(source).parallel(forkJoinPool)
+                .collect(Collectors.groupingBy(n -> n % 7, Collectors.counting())));
+        assertEquals(expected, new Stream<>(source).parallel(forkJoinPool)
+                .collect(Collectors.groupingByConcurrent(n -> n % 7, Collectors.counting())));
+
+        Map<Boolean, List<Integer>> partitioned = new Stream<>(source).parallel(forkJoinPool)
+                .collect(Collectors.partitioningBy(n -> n < 10));
+        assertEquals(StreamsUtils.intStream(10).toList(), partitioned.get(true));
+        assertEquals(99_990, partitioned.get(false).size());
+
+        IntSummaryStatistics statistics = new Stream<>(source).parallel(forkJoinPool)
+                .collect(Collectors.summarizingInt(n -> n));
+        assertEquals(100_000, statistics.getCount());
+        assertEquals(99_999, statistics.getMax());
+        assertEquals(4_999_950_000L, statistics.getSum());
+    }
+
+    @Test
+    public void testDownstreamCollectors() {
+        Map<Integer, String> joined = new Stream<>(strings)
+                .collect(Collectors.groupingBy(String::length, TreeMap::new, Collectors.mapping(String::toUpperCase, Collectors.joining(","))));
+        assertEquals("{4=DATE, 5=APPLE, 6=BANANA,CHERRY}", joined.toString());
+
+        Map<Boolean, Integer> sums = new Stream<>(numbers)
+                .collect(Collectors.partitioningBy(n -> n % 2 == 0, Collectors.filtering(n -> n > 2, Collectors.reducing(0, Integer::sum))));
+        assertEquals(Integer.valueOf(4), sums.get(true));
+        assertEquals(Integer.valueOf(11), sums.get(false));
+    }
+
+    @Test
+    public void testIteratorPullsElementsOnDemand() {
+        AtomicInteger mapped = new AtomicInteger();
+        Iterator<Integer> iterator = StreamsUtils.intStream(10_000_000)
+                .map(n -> {
+                    mapped.incrementAndGet();
+                    return n * 2;
+                })
+                .filter(n -> n % 3 == 0)
+                .iterator();
+        assertEquals(0, mapped.get());
+        assertEquals(Integer.valueOf(0), iterator.next());
+        assertEquals(Integer.valueOf(6), iterator.next());
+        assertEquals(4, mapped.get());
+
+        Iterator<Integer> sorted = new Stream<>(numbers).sorted().iterator();
+        List<Integer> drained = new ArrayList<>();
+        sorted.forEachRemaining(drained::add);
+        assertEquals(Arrays.asList(1, 2, 2, 3, 3, 4, 5), drained);
+        assertFalse(sorted.hasNext());
+    }
+
+    @Test
+    public void testJdkStreamBridge() {
+        assertEquals(15, new Stream<>(numbers).filter(n -> n > 2).toJdkStream().mapToInt(Integer::intValue).sum());
+        assertEquals(Arrays.asList(0, 1, 4), StreamsUtils.iterate(0, n -> n + 1).map(n -> n * n).toJdkStream()
+                .limit(3).collect(java.util.stream.Collectors.toList()));
+        assertEquals(Arrays.asList("A", "B"), StreamsUtils.stream(java.util.stream.Stream.of("a", "b")).map(String::toUpperCase).toList());
+        assertEquals(499_500L, (long) StreamsUtils.longStream(1000).toJdkStream().parallel().reduce(0L, Long::sum));
+    }
+
+    @Test
+    public void testExecutionBackends() {
+        List<Integer> source = StreamsUtils.intStream(1000).toList();
+        List<Integer> expected = new Stream<>(source).map(n -> n * 3).filter(n -> n % 2 == 0).toList();
+        for (ExecutionBackend backend : ExecutionBackend.values()) {
+            assertEquals(expected, new Stream<>(source).parallel(backend).map(n -> n * 3).filter(n -> n % 2 == 0).toList());
+            assertFalse(backend.executorService().isShutdown());
+        }
+
+        Thread caller = Thread.currentThread();
+        assertTrue(new Stream<>(source).parallel(ExecutionBackend.CALLER_RUNS).allMatch(n -> Thread.currentThread() == caller));
+
+        // blocking suppliers overlap instead of queuing behind a few platform threads
+        long start = System.nanoTime();
+        List<Integer> slept = StreamsUtils.subscriberParallelStream(() -> {
+            try {
+                Thread.sleep(50);
+                return 1;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, 64, ExecutionBackend.VIRTUAL_THREADS).toList();
+        assertEquals(64, slept.size());
+        assertTrue(System.nanoTime() - start < 64 * 50_000_000L / 4);
+    }
+
+    @Test
+    public void testUserExecutorIsNotShutDownByTerminalOperations() {
+        Stream<Integer> stream = new Stream<>(numbers).parallel(executor).map(n -> n + 1);
+        assertEquals(Arrays.asList(2, 3, 4, 5, 6, 3, 4), stream.toList());
+        assertFalse(executor.isShutdown());
+        assertEquals(7, stream.count());
+        assertEquals(Integer.valueOf(27), stream.reduce(Integer::sum, 0));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUnorderedTerminalsConsumeInCompletionOrder() {
+        List<Integer> source = StreamsUtils.intStream(32).toList();
+        Function<Integer, Integer> slowFirst = n -> {
+            try {
+                Thread.sleep(n == 0 ? 300 : 1);
+                return n;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        assertEquals(Optional.of(0), new Stream<>(source).parallel(ExecutionBackend.VIRTUAL_THREADS).map(slowFirst).find(n -> true));
+        Optional<Integer> any = new Stream<>(source).parallel(ExecutionBackend.VIRTUAL_THREADS).map(slowFirst).unordered().find(n -> true);
+        assertTrue(any.isPresent() && any.get() != 0);
+
+        List<Integer> consumed = new ArrayList<>();
+        new Stream<>(source).parallel(ExecutionBackend.VIRTUAL_THREADS).map(slowFirst).sequential().unordered().forEach(consumed::add);
+        assertEquals(new HashSet<>(source), new HashSet<>(consumed));
+        assertEquals(Integer.valueOf(0), consumed.get(consumed.size() - 1));
+        assertEquals(new HashSet<>(source), new Stream<>(source).parallel(forkJoinPool).map(slowFirst).unordered().toSet());
+        assertEquals(32, new Stream<>(source).parallel(ExecutionBackend.VIRTUAL_THREADS).map(slowFirst).count());
+    }
+
+    @Test
+    public void testOrderedParallelStagesReorderCompletedResults() {
+        List<Integer> source = StreamsUtils.intStream(200).toList();
+        Random random = new Random(7);
+        List<Integer> delays = new ArrayList<>();
+        for (int i = 0; i < source.size(); i++) {
+            delays.add(random.nextInt(5));
+        }
+        Function<Integer, Integer> jittered = n -> {
+            try {
+                Thread.sleep(delays.get(n));
+                return n * 2;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        List<Integer> expected = new Stream<>(source).map(n -> n * 2).toList();
+        assertEquals(expected, new Stream<>(source).parallel(ExecutionBackend.VIRTUAL_THREADS).map(jittered).toList());
+        // a parallel run behind a sequential stage submits one task per element
+        assertEquals(expected.subList(0, 50), new Stream<>(source).limit(50).parallel(ExecutionBackend.VIRTUAL_THREADS).map(jittered).toList());
+        assertEquals(new HashSet<>(expected.subList(0, 50)), new Stream<>(source).limit(50)
+                .parallel(ExecutionBackend.VIRTUAL_THREADS).map(jittered).unordered().toSet());
+    }
+
+    @Test
+    public void testParallelPipelineOverHugeSourceRunsInBoundedMemory() throws Exception {
+        // the child JVM gets a heap far too small to hold the chunks of a 100M-element source at once
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-Xmx24m", "-cp", System.getProperty("java.class.path"),
+                HugePipeline.class.getName())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes()).trim();
+        assertEquals(output, 0, process.waitFor());
+        assertEquals(String.valueOf(HugePipeline.EXPECTED), output);
+    }
+
+    @Test
+    public void testMaxInFlightBoundsRunningTasks() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Function<Integer, Integer> tracked = n -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+                return n;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        List<Integer> source = StreamsUtils.intStream(300).toList();
+        assertEquals(source, new Stream<>(source).parallel(ExecutionBackend.VIRTUAL_THREADS).maxInFlight(3).map(tracked).toList());
+        assertTrue(peak.get() <= 3);
+        peak.set(0);
+        assertEquals(source.subList(0, 100), new Stream<>(source).limit(100).parallel(ExecutionBackend.VIRTUAL_THREADS)
+                .maxInFlight(2).map(tracked).toList());
+        assertTrue(peak.get() <= 2);
+        assertThrows(IllegalArgumentException.class, () -> new Stream<>(source).maxInFlight(0));
+    }
+
+    @Test
+    public void testAsyncTerminalOperations() throws Exception {
+        List<Integer> source = StreamsUtils.intStream(1000).toList();
+        CompletableFuture<Integer> total = new Stream<>(source).parallel(forkJoinPool)
+                .map(n -> n * 2)
+                .toListAsync()
+                .thenApply(list -> list.get(list.size() - 1));
+        assertEquals(Integer.valueOf(1998), total.get(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(500), new Stream<>(source).parallel().filter(n -> n % 2 == 0).countAsync().get());
+        assertEquals(Integer.valueOf(499_500), new Stream<>(source).reduceAsync(Integer::sum, 0).get());
+        assertEquals(Optional.empty(), new Stream<>(new ArrayList<Integer>()).reduceAsync(Integer::sum).get());
+        assertEquals(new HashSet<>(numbers), new Stream<>(numbers).toSetAsync().get());
+        assertEquals("1,2,3,4,5,2,3", new Stream<>(numbers).map(String::valueOf).collectAsync(Collectors.joining(",")).get());
+
+        AtomicInteger consumed = new AtomicInteger();
+        new Stream<>(source).parallel().forEachAsync(n -> consumed.incrementAndGet()).get();
+        assertEquals(1000, consumed.get());
+
+        CompletableFuture<List<Integer>> failed = new Stream<>(numbers).map(n -> 10 / (n - 3)).toListAsync();
+        ExecutionException failure = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(failure.getCause() instanceof ArithmeticException);
+    }
+
+    @Test
+    public void testCancellingAsyncTerminalStopsTheStream() throws Exception {
+        AtomicInteger processed = new AtomicInteger();
+        Function<Integer, Integer> slow = n -> {
+            processed.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return n;
+        };
+        List<Supplier<CompletableFuture<?>>> queries = List.of(
+                () -> StreamsUtils.intStream(Integer.MAX_VALUE).parallel(forkJoinPool).map(slow).countAsync(),
+                () -> StreamsUtils.iterate(0, n -> n + 1).map(slow).forEachAsync(n -> {
+                }));
+        for (Supplier<CompletableFuture<?>> query : queries) {
+            CompletableFuture<?> future = query.get();
+            Thread.sleep(100);
+            assertTrue(future.cancel(true));
+            assertThrows(CancellationException.class, future::join);
+            Thread.sleep(100);
+            int stopped = processed.get();
+            Thread.sleep(200);
+            assertEquals(stopped, processed.get());
+        }
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            ParallelFuture<Integer> sleeping = new ParallelFuture<>(pool.submit(() -> {
+                Thread.sleep(10_000);
+                return 1;
+            }));
+            RuntimeException timeout = assertThrows(RuntimeException.class, () -> sleeping.get(20, TimeUnit.MILLISECONDS));
+            assertTrue(timeout.getCause() instanceof TimeoutException);
+            assertTrue(sleeping.cancel(true));
+            assertThrows(CancellationException.class, sleeping::get);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelReduceAppliesTheSeedOnce() {
+        List<Integer> ones = new ArrayList<>(Collections.nCopies(100_000, 1));
+        assertEquals(Integer.valueOf(100_010), new Stream<>(ones).reduce(Integer::sum, 10));
+        assertEquals(Integer.valueOf(100_010), new Stream<>(ones).parallel(forkJoinPool).reduce(Integer::sum, 10));
+        assertEquals(Integer.valueOf(10), new Stream<>(ones).parallel(forkJoinPool).filter(n -> n > 1).reduce(Integer::sum, 10));
+        // the seed goes in front of the first element, not in front of every chunk
+        List<String> letters = new Stream<>(StreamsUtils.intStream(50_000).toList()).map(n -> String.valueOf((char) ('a' + n % 26))).toList();
+        assertEquals(new Stream<>(letters).reduce(String::concat, ">"),
+                new Stream<>(letters).parallel(forkJoinPool).reduce(String::concat, ">"));
+    }
+
+    @Test
+    public void testParallelReductionsCombinePartialResults() {
+        List<Integer> source = StreamsUtils.intStream(10_000).toList();
+        assertEquals(Integer.valueOf(49_995_000), new Stream<>(source).parallel(forkJoinPool).reduce(Integer::sum, 0));
+        assertEquals(Optional.of(49_995_000), new Stream<>(source).parallel(forkJoinPool).reduce(Integer::sum));
+        assertEquals(Optional.empty(), new Stream<>(source).parallel(forkJoinPool).filter(n -> n < 0).reduce(Integer::sum));
+        // string concatenation is associative but not commutative, so the partial results must stay in order
+        String digits = new Stream<>(source).parallel(forkJoinPool).map(n -> n % 10).reduce("", (text, n) -> text + n, String::concat);
+        assertEquals(new Stream<>(source).map(n -> n % 10).reduce("", (text, n) -> text + n, String::concat), digits);
+        assertEquals(10_000, digits.length());
+        assertEquals(Integer.valueOf(9_999), new Stream<>(source).parallel(forkJoinPool).max(Integer::compare));
+        assertEquals(Integer.valueOf(0), new Stream<>(source).parallel(forkJoinPool).min(Integer::compare));
+        // ties keep the first element in encounter order
+        assertEquals("bb", new Stream<>(Arrays.asList("bb", "ab", "cc")).max(Comparator.comparing(String::length)));
+        assertEquals("bb", new Stream<>(Arrays.asList("bb", "ab", "cc")).min(Comparator.comparing(String::length)));
+        assertNull(new Stream<>(new ArrayList<Integer>()).parallel(forkJoinPool).max(Integer::compare));
+    }
+
+    @Test
+    public void testCompensatedSumAndAverage() {
+        List<Double> tenths = Collections.nCopies(1_000_000, 0.1);
+        double naive = 0;
+        for (double tenth : tenths) {
+            naive += tenth;
+        }
+        assertNotEquals(100_000.0, naive, 0.0);
+        assertEquals(100_000.0, new Stream<>(tenths).sum(n -> n), 0.0);
+        assertEquals(100_000.0, new Stream<>(tenths).parallel(forkJoinPool).sum(n -> n), 0.0);
+        assertEquals(0.1, new Stream<>(tenths).parallel(forkJoinPool).average(n -> n), 0.0);
+        assertEquals(0.0, new Stream<>(new ArrayList<Double>()).average(n -> n), 0.0);
+        assertEquals(1.0, DoubleStream.of(1e100, 1.0, -1e100).sum(), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, DoubleStream.of(Double.MAX_VALUE, Double.MAX_VALUE).sum(), 0.0);
+        assertEquals(Double.valueOf(0.5), new Stream<>(Arrays.asList(0.25, 0.75)).collect(Collectors.averagingDouble(Double::doubleValue)));
+    }
+
+    @Test
+    public void testBatchWindowAndChunkWhile() {
+        List<Integer> source = Arrays.asList(1, 2, 3, 4, 5, 6, 7);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7)),
+                new Stream<>(source).batch(3).toList());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(3, 4, 5), Arrays.asList(5, 6, 7)),
+                new Stream<>(source).window(3, 2).toList());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(4, 5)),
+                new Stream<>(source).window(2, 3).toList());
+        assertEquals(new ArrayList<>(), new Stream<>(source).window(8, 1).toList());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(4), Arrays.asList(9, 10, 11), Arrays.asList(15)),
+                new Stream<>(Arrays.asList(1, 2, 4, 9, 10, 11, 15)).chunkWhile((previous, next) -> next == previous + 1).toList());
+        assertEquals(Arrays.asList(new Stream.Pair<>("a", 1L), new Stream.Pair<>("b", 2L)),
+                new Stream<>(Arrays.asList("a", "b")).zipWithIndex(1).toList());
+        assertThrows(IllegalArgumentException.class, () -> new Stream<>(source).batch(0));
+        assertThrows(IllegalArgumentException.class, () -> new Stream<>(source).window(2, 0));
+    }
+
+    @Test
+    public void testBatchingRunsIncrementallyOnLargeParallelStreams() {
+        AtomicInteger pulled = new AtomicInteger();
+        // an unbounded source only finishes if batches are passed on before the input ends
+        List<List<Integer>> batches = StreamsUtils.iterate(0, n -> n + 1)
+                .peek(n -> pulled.incrementAndGet())
+                .batch(100)
+                .limit(3)
+                .toList();
+        assertEquals(3, batches.size());
+        assertEquals(Integer.valueOf(299), batches.get(2).get(99));
+        assertTrue(pulled.get() <= 301);
+
+        List<Integer> source = StreamsUtils.intStream(100_000).toList();
+        List<Long> batchSums = new Stream<>(source)
+                .parallel(forkJoinPool)
+                .map(n -> (long) n)
+                .batch(1_000)
+                .map(batch -> new Stream<>(batch).reduce(Long::sum, 0L))
+                .toList();
+        assertEquals(100, batchSums.size());
+        assertEquals(Long.valueOf(499_500L), batchSums.get(0));
+        List<Stream.Pair<Integer, Long>> indexed = new Stream<>(source).parallel(forkJoinPool).zipWithIndex().toList();
+        for (int i = 0; i < indexed.size(); i += 997) {
+            assertEquals(Long.valueOf(indexed.get(i).key()), indexed.get(i).value());
+        }
+    }
+
+    @Test
+    public void testZipConcatAndMergeSorted() {
+        Stream<Integer> letters = new Stream<>(Arrays.asList(1, 2, 3));
+        assertEquals(Arrays.asList(new Stream.Pair<>(1, "a"), new Stream.Pair<>(2, "b")),
+                letters.zip(new Stream<>(Arrays.asList("a", "b"))).toList());
+        assertEquals(Arrays.asList(11, 22, 33),
+                new Stream<>(Arrays.asList(1, 2, 3)).zip(StreamsUtils.iterate(10, n -> n + 10), Integer::sum).toList());
+        assertEquals(Arrays.asList(1, 2, 3, 4),
+                new Stream<>(Arrays.asList(1, 2)).concat(new Stream<>(Arrays.asList(3, 4))).toList());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 7, 8, 9),
+                new Stream<>(Arrays.asList(1, 4, 7, 9)).mergeSorted(new Stream<>(Arrays.asList(2, 3, 8))).toList());
+        assertEquals(Arrays.asList("bb", "aa", "c"),
+                new Stream<>(Arrays.asList("bb", "c")).mergeSorted(new Stream<>(Arrays.asList("aa")), Comparator.comparing(String::length).reversed()).toList());
+
+        List<Integer> source = StreamsUtils.intStream(20_000).toList();
+        List<Integer> doubled = new Stream<>(source).filter(n -> n % 2 == 0)
+                .concat(new Stream<>(source).filter(n -> n % 2 == 1))
+                .parallel(forkJoinPool)
+                .map(n -> n * 2)
+                .toList();
+        assertEquals(20_000, doubled.size());
+        assertEquals(Integer.valueOf(0), doubled.get(0));
+        assertEquals(Integer.valueOf(2), doubled.get(10_000));
+        List<Integer> merged = new Stream<>(source).filter(n -> n % 3 == 0)
+                .mergeSorted(new Stream<>(source).filter(n -> n % 3 != 0))
+                .parallel(forkJoinPool)
+                .map(n -> n + 1)
+                .toList();
+        assertEquals(new Stream<>(source).map(n -> n + 1).toList(), merged);
+    }
+
+    @Test
+    public void testHashJoinBuildsOnceAndStreamsProbeSide() {
+        AtomicInteger built = new AtomicInteger();
+        Stream<Stream.Pair<Integer, String>> names = new Stream<>(Arrays.asList(
+                new Stream.Pair<>(1, "one"), new Stream.Pair<>(2, "two"), new Stream.Pair<>(2, "deux")))
+                .peek(pair -> built.incrementAndGet());
+        List<String> joined = new Stream<>(Arrays.asList(2, 3, 1, 2))
+                .join(names, n -> n, Stream.Pair::key, (n, pair) -> n + "=" + pair.value())
+                .toList();
+        assertEquals(Arrays.asList("2=two", "2=deux", "1=one", "2=two", "2=deux"), joined);
+        assertEquals(3, built.get());
+
+        List<Integer> source = StreamsUtils.intStream(50_000).toList();
+        built.set(0);
+        long matches = new Stream<>(source)
+                .parallel(forkJoinPool)
+                .join(new Stream<>(source).filter(n -> n % 10 == 0).peek(n -> built.incrementAndGet()),
+                        n -> n, n -> n, Integer::sum)
+                .filter(n -> n % 20 == 0)
+                .count();
+        assertEquals(5_000, matches);
+        assertEquals(5_000, built.get());
+        assertThrows(IllegalArgumentException.class, () -> new Stream<>(source).join(null, n -> n, n -> n, Integer::sum));
+    }
+
+    @Test
+    public void testFlatMapPushesInnerElementsDirectly() {
+        AtomicInteger pulled = new AtomicInteger();
+        // an infinite inner stream only terminates if flatMap stops reading it once limit is reached
+        List<Integer> firstFive = new Stream<>(Arrays.asList(1, 2))
+                .flatMap(n -> StreamsUtils.iterate(n, m -> m + 1).peek(m -> pulled.incrementAndGet()))
+                .limit(5)
+                .toList();
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), firstFive);
+        assertEquals(5, pulled.get());
+        assertEquals(Arrays.asList(3, 1, 2, 4),
+                new Stream<>(Arrays.asList(Arrays.asList(3, 1, 2), null, Arrays.asList(4)))
+                        .flatMap(list -> list == null ? null : new Stream<>(list))
+                        .toList());
+        List<Integer> parallel = StreamsUtils.intStream(1_000)
+                .parallel(forkJoinPool)
+                .flatMap(n -> new Stream<>(Arrays.asList(n, n)).parallel().map(m -> m * 2))
+                .toList();
+        assertEquals(2_000, parallel.size());
+        assertEquals(Integer.valueOf(1_998), parallel.get(1_999));
+    }
+
+    @Test
+    public void testMapMultiEmitsWithoutInnerStreams() {
+        List<String> words = new Stream<>(Arrays.asList("a b", "", "c d e"))
+                .<String>mapMulti((line, emit) -> {
+                    for (String word : line.split(" ")) {
+                        if (!word.isEmpty()) {
+                            emit.accept(word);
+                        }
+                    }
+                })
+                .toList();
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), words);
+        assertEquals(Arrays.asList(0, 1, 0), new Stream<>(Arrays.asList(2, 3))
+                .<Integer>mapMulti((n, emit) -> {
+                    for (int i = 0; i < n; i++) {
+                        emit.accept(i);
+                    }
+                })
+                .limit(3)
+                .toList());
+        long fanOut = StreamsUtils.intStream(10_000)
+                .parallel(forkJoinPool)
+                .<Integer>mapMulti((n, emit) -> {
+                    for (int i = 0; i < 100; i++) {
+                        emit.accept(n);
+                    }
+                })
+                .count();
+        assertEquals(1_000_000L, fanOut);
+    }
+
+    @Test
+    public void testInstrumentationCountsElementsPerStage() {
+        PipelineMetrics metrics = new PipelineMetrics("numbers");
+        List<Integer> result = StreamsUtils.intStream(1_000)
+                .instrument(metrics)
+                .filter(n -> n % 2 == 0)
+                .map(n -> n * 3)
+                .limit(100)
+                .toList();
+        assertEquals(100, result.size());
+        List<StageMetrics> stages = metrics.stages();
+        // the report shows the optimized plan, where the limit runs before the map
+        assertEquals(Arrays.asList("FILTER", "LIMIT(100)", "MAP"), new Stream<>(stages).map(StageMetrics::stage).toList());
+        // the limit stops the source, so the filter only sees the elements needed for 100 even numbers
+        assertEquals(199, stages.get(0).elementsIn());
+        assertEquals(100, stages.get(0).elementsOut());
+        assertEquals(100, stages.get(2).elementsIn());
+        assertTrue(stages.get(2).wallNanos() > 0);
+        assertEquals(1, metrics.getRuns());
+        assertTrue(metrics.report().contains("FILTER"));
+
+        long count = StreamsUtils.intStream(100_000)
+                .instrument(metrics)
+                .parallel(forkJoinPool)
+                .filter(n -> n % 10 == 0)
+                .count();
+        assertEquals(10_000, count);
+        assertEquals(2, metrics.getRuns());
+        assertEquals(100_000, metrics.stages().get(0).elementsIn());
+        assertEquals(10_000, metrics.stages().get(0).elementsOut());
+        assertTrue(metrics.stages().get(0).stage().endsWith("parallel"));
+    }
+
+    @Test
+    public void testInstrumentationHooksAndJmx() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("instrumented-test", true);
+        List<Long> reported = new ArrayList<>();
+        metrics.addListener(finished -> reported.add(finished.stages().get(0).elementsOut()));
+        metrics.registerMBean();
+        try {
+            new Stream<>(Arrays.asList("a", "bb", "ccc"))
+                    .instrument(metrics)
+                    .map(word -> word.repeat(1_000))
+                    .forEach(word -> { });
+            assertEquals(Arrays.asList(3L), reported);
+            assertTrue(metrics.stages().get(0).allocatedBytes() > 0);
+            javax.management.ObjectName name = new javax.management.ObjectName("org.example.streams:type=PipelineMetrics,name=\"instrumented-test\"");
+            javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "Runs"));
+            assertArrayEquals(new long[]{3}, (long[]) server.getAttribute(name, "ElementsIn"));
+            assertThrows(IllegalStateException.class, metrics::registerMBean);
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Stream<>(numbers).instrument(null));
+    }
+
+    @Test
+    public void testExternalSortSpillsRunsAndMergesThemBack() throws IOException {
+        Path spillDirectory = Files.createTempDirectory("spill-test");
+        Random random = new Random(7);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            events.add(new Event(random.nextInt(1_000), "event-" + i));
+        }
+        SpillOptions<Event> options = new SpillOptions<>(1_000, SpillSerializer.jackson(Event.class), spillDirectory);
+        List<Event> expected = new Stream<>(events).sorted(Comparator.comparingInt(Event::key)).toList();
+        // the sort is stable, so comparing ids checks that ties kept their encounter order across runs
+        assertEquals(expected, new Stream<>(events).sorted(Comparator.comparingInt(Event::key), options).toList());
+        assertEquals(expected, new Stream<>(events).parallel(forkJoinPool).sorted(Comparator.comparingInt(Event::key), options).toList());
+        Optional<Event> found = new Stream<>(events).sorted(Comparator.comparingInt(Event::key), options).find(event -> event.key() == 500);
+        assertEquals(expected.stream().filter(event -> event.key() == 500).findFirst(), found);
+
+        List<Integer> small = Arrays.asList(3, 1, 2);
+        assertEquals(Arrays.asList(1, 2, 3), new Stream<>(small).sorted(new SpillOptions<>(10, SpillSerializer.jackson(Integer.class), spillDirectory)).toList());
+        try (java.util.stream.Stream<Path> left = Files.list(spillDirectory)) {
+            assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    public void testExternalDistinctKeepsFirstOccurrencesInEncounterOrder() throws IOException {
+        Path spillDirectory = Files.createTempDirectory("spill-test");
+        SpillSerializer<String> strings = new SpillSerializer<>() {
+            @Override
+            public void write(String item, java.io.DataOutput out) throws IOException {
+                out.writeUTF(item);
+            }
+
+            @Override
+            public String read(java.io.DataInput in) throws IOException {
+                return in.readUTF();
+            }
+        };
+        Random random = new Random(11);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            words.add("w" + random.nextInt(5_000));
+            // "Aa" and "BB" share a hash code, so equal hashes must still be told apart by equals
+            words.add(i % 2 == 0 ? "Aa" : "BB");
+        }
+        SpillOptions<String> options = new SpillOptions<>(500, strings, spillDirectory);
+        List<String> expected = new Stream<>(words).distinct().toList();
+        assertEquals(expected, new Stream<>(words).distinct(options).toList());
+        assertEquals(expected, new Stream<>(words).parallel(forkJoinPool).distinct(options).toList());
+        assertEquals(Arrays.asList("a", "b"), new Stream<>(Arrays.asList("a", "b", "a")).distinct(options).toList());
+        try (java.util.stream.Stream<Path> left = Files.list(spillDirectory)) {
+            assertEquals(0, left.count());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SpillOptions<>(0, strings));
+    }
+
+    public record Event(int key, String id) {
+    }
+
+    @Test
+    public void testPipelineIsCompiledOnceAndRunsConcurrently() throws Exception {
+        AtomicInteger shapes = new AtomicInteger();
+        Pipeline<Integer, List<Integer>> evenSquares = Pipeline.of(numbers -> {
+            shapes.incrementAndGet();
+            return numbers.filter(n -> n % 2 == 0).map(n -> n * n).sorted(Comparator.reverseOrder()).limit(3);
+        }, Collectors.toList());
+        assertEquals(Arrays.asList(16, 4, 0), evenSquares.apply(Arrays.asList(0, 1, 2, 3, 4)));
+        assertEquals(Arrays.asList(100, 64, 36), evenSquares.apply(StreamsUtils.intStream(11).spliterator()));
+        assertEquals(Collections.emptyList(), evenSquares.apply(Collections.emptyList()));
+
+        Pipeline<Integer, Map<Integer, Long>> histogram = Pipeline.of(
+                numbers -> numbers.parallel(forkJoinPool).map(n -> n % 10),
+                Collectors.groupingBy(n -> n, Collectors.counting()));
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map<Integer, Long>>> runs = new ArrayList<>();
+            for (int run = 1; run <= 32; run++) {
+                List<Integer> source = new ArrayList<>();
+                for (int i = 0; i < run * 1_000; i++) {
+                    source.add(i);
+                }
+                runs.add(callers.submit(() -> histogram.apply(source)));
+            }
+            for (int run = 1; run <= 32; run++) {
+                Map<Integer, Long> counts = runs.get(run - 1).get();
+                assertEquals(10, counts.size());
+                assertEquals(Long.valueOf(run * 100L), counts.get(7));
+            }
+        } finally {
+            callers.shutdown();
+        }
+        assertEquals(1, shapes.get());
+    }
+
+    @Test
+    public void testPipelineRejectsReplacedSourcesAndMeasuresEveryRun() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Pipeline.<Integer, Integer, List<Integer>>of(numbers -> numbers.concat(new Stream<>(Arrays.asList(1))), Collectors.toList()));
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.<Integer, Integer, List<Integer>>of(null, Collectors.toList()));
+        assertThrows(IllegalStateException.class, () -> Pipeline.<Integer, Integer, List<Integer>>of(numbers -> {
+            numbers.toList();
+            return numbers;
+        }, Collectors.toList()));
+
+        PipelineMetrics metrics = new PipelineMetrics("pipeline-test");
+        Pipeline<Integer, Long> evens = Pipeline.of(numbers -> numbers.instrument(metrics).filter(n -> n % 2 == 0), Collectors.counting());
+        assertEquals(Long.valueOf(5), evens.apply(StreamsUtils.intStream(10).spliterator()));
+        assertEquals(10, metrics.stages().get(0).elementsIn());
+        assertEquals(Long.valueOf(2), evens.apply(Arrays.asList(1, 2, 4)));
+        assertEquals(3, metrics.stages().get(0).elementsIn());
+    }
+
+    @Test
+    public void testMaterializedViewFollowsInsertsAndDeletes() {
+        ObservableCollection<String> words = new ObservableCollection<>(new ArrayList<>(Arrays.asList("a", "bb", "cc", "ddd")));
+        AtomicInteger mapped = new AtomicInteger();
+        MaterializedView<String, Map<Integer, Long>> byLength = MaterializedView.of(words,
+                stream -> stream.filter(word -> !word.startsWith("x")).peek(word -> mapped.incrementAndGet()).map(String::length),
+                IncrementalCollector.groupingBy(length -> length, IncrementalCollector.counting()));
+        assertEquals(Map.of(1, 1L, 2, 2L, 3, 1L), byLength.get());
+        assertEquals(4, mapped.get());
+
+        words.add("ee");
+        words.add("xx");
+        words.remove("a");
+        assertEquals(Map.of(2, 3L, 3, 1L), byLength.get());
+        // every change only passed its own element through the stages
+        assertEquals(6, mapped.get());
+        assertEquals(new Stream<>(words).filter(word -> !word.startsWith("x")).toMap(String::length, word -> 1L, Long::sum), byLength.get());
+
+        Iterator<String> iterator = words.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(Map.of(2, 2L, 3, 1L), byLength.get());
+        words.clear();
+        assertEquals(Collections.emptyMap(), byLength.get());
+
+        byLength.close();
+        words.add("ff");
+        assertEquals(Collections.emptyMap(), byLength.get());
+    }
+
+    @Test
+    public void testMaterializedViewSumsFlatMappedElementsAndRejectsStatefulStages() {
+        ObservableCollection<List<Integer>> baskets = new ObservableCollection<>();
+        MaterializedView<List<Integer>, Long> total = MaterializedView.of(baskets,
+                stream -> stream.flatMap(basket -> new Stream<>(basket)), IncrementalCollector.summingLong(n -> n));
+        MaterializedView<List<Integer>, Double> average = MaterializedView.of(baskets,
+                stream -> stream.parallel(forkJoinPool).map(basket -> basket.size() * 0.1), IncrementalCollector.summingDouble(n -> n));
+        List<Integer> first = Arrays.asList(1, 2, 3);
+        baskets.add(first);
+        baskets.add(Arrays.asList(10, 20));
+        assertEquals(Long.valueOf(36), total.get());
+        baskets.remove(Arrays.asList(1, 2, 3));
+        assertEquals(Long.valueOf(30), total.get());
+        assertEquals(0.2, average.get(), 1e-12);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MaterializedView.of(baskets, stream -> stream.sorted(Comparator.comparingInt(List::size)), IncrementalCollector.counting()));
+        assertThrows(IllegalArgumentException.class,
+                () -> MaterializedView.of(baskets, stream -> stream.limit(0), IncrementalCollector.counting()));
+        assertThrows(IllegalStateException.class, () -> MaterializedView.of(baskets, stream -> {
+            stream.count();
+            return stream;
+        }, IncrementalCollector.counting()));
+    }
+
+    @Test
+    public void testCountAndAnyMatchKeepEncounterOrderForOrderSensitiveStages() {
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            numbers.add(i);
+        }
+        // the first element is the slowest, so completion order would hand it to limit last
+        assertTrue(new Stream<>(numbers).parallel(ExecutionBackend.VIRTUAL_THREADS).map(n -> {
+            if (n == 0) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return n;
+        }).sequential().limit(1).anyMatch(n -> n == 0));
+
+        List<Integer> run = new ArrayList<>();
+        List<Integer> repeated = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            run.add(i);
+            repeated.add(i % 100);
+        }
+        Collections.shuffle(repeated, new Random(3));
+        assertEquals(1, new Stream<>(run).parallel(forkJoinPool).map(n -> n).chunkWhile((a, b) -> b == a + 1).count());
+        assertEquals(100, new Stream<>(repeated).parallel(forkJoinPool).sorted().filter(n -> n >= 0).distinct().count());
+        assertEquals(10_000, new Stream<>(run).parallel(forkJoinPool).map(n -> n + 1).filter(n -> n > 0).count());
+    }
+
+    @Test
+    public void testJoinBuildsItsTablePerRun() throws Exception {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            keys.add(i % 100);
+        }
+        AtomicInteger builds = new AtomicInteger();
+        Stream<String> names = new Stream<>(Arrays.asList(1, 2, 3)).peek(n -> builds.incrementAndGet()).map(n -> "n" + n);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            Stream<String> joined = new Stream<>(keys).parallel(forkJoinPool).join(names, n -> n, name -> Integer.parseInt(name.substring(1)), (n, name) -> name);
+            List<Future<Long>> counts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                counts.add(callers.submit(joined::count));
+            }
+            for (Future<Long> count : counts) {
+                assertEquals(Long.valueOf(300), count.get());
+            }
+            // one build per terminal operation, however many chunks probed the table
+            assertEquals(8 * 3, builds.get());
+
+            Pipeline<Integer, List<String>> named = Pipeline.of(
+                    numbers -> numbers.join(names, n -> n, name -> Integer.parseInt(name.substring(1)), (n, name) -> name),
+                    Collectors.toList());
+            assertEquals(Arrays.asList("n3", "n1"), named.apply(Arrays.asList(3, 7, 1)));
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void testJoinInsideFlatMapAndMapMulti() {
+        Stream<String> names = new Stream<>(Arrays.asList("n1", "n2", "n3"));
+        assertEquals(Arrays.asList("n1", "n2", "n3"), new Stream<>(List.of(1, 2, 3))
+                .flatMap(n -> new Stream<>(List.of(n)).join(names, k -> k, name -> Integer.parseInt(name.substring(1)), (k, name) -> name))
+                .toList());
+        assertEquals(Arrays.asList("n2", "n3"), new Stream<>(List.of(2, 3, 4))
+                .<String>mapMulti((n, emit) -> new Stream<>(List.of(n))
+                        .join(names, k -> k, name -> Integer.parseInt(name.substring(1)), (k, name) -> name)
+                        .forEach(emit))
+                .toList());
+    }
+
+    @Test
+    public void testEveryParallelStageRunsOnTheExecutorItWasGiven() {
+        ExecutorService first = Executors.newFixedThreadPool(2, task -> new Thread(task, "first-pool"));
+        ExecutorService second = Executors.newFixedThreadPool(2, task -> new Thread(task, "second-pool"));
+        try {
+            List<Integer> source = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                source.add(i);
+            }
+            Set<String> firstThreads = ConcurrentHashMap.newKeySet();
+            Set<String> secondThreads = new Stream<>(source)
+                    .parallel(first)
+                    .map(n -> {
+                        firstThreads.add(Thread.currentThread().getName());
+                        return n;
+                    })
+                    .parallel(second)
+                    .map(n -> Thread.currentThread().getName())
+                    .toSet();
+            assertEquals(Set.of("first-pool"), firstThreads);
+            assertEquals(Set.of("second-pool"), secondThreads);
+
+            // a blocking stage after a CPU-bound one must stay off the ForkJoin workers
+            Set<Boolean> onForkJoin = new Stream<>(source)
+                    .parallel(forkJoinPool)
+                    .map(n -> n + 1)
+                    .parallel(ExecutionBackend.VIRTUAL_THREADS)
+                    .map(n -> Thread.currentThread() instanceof ForkJoinWorkerThread)
+                    .toSet();
+            assertEquals(Set.of(false), onForkJoin);
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    /**
+     * Runs a parallel pipeline over 100M lazily produced elements, started in a JVM with a small heap
+     */
+    public static final class HugePipeline {
+        /** Sum of the multiples of three below 100M, every one of them doubled */
+        private static final long EXPECTED = 2 * 3 * (33_333_333L * 33_333_334L / 2);
+
+        public static void main(String[] args) {
+            long sum = StreamsUtils.intStream(100_000_000)
+                    .parallel(new ForkJoinPool(4))
+                    .filter(n -> n % 3 == 0)
+                    .map(n -> 2L * n)
+                    .reduce(Long::sum, 0L);
+            System.out.println(sum);
+            System.exit(0);
+        }
+    }
+}